@@ -6,10 +6,18 @@ import android.util.Pair;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * {@link #addAndSort(Object)} keeps the list sorted by moving the element to its binary searched position, an element whose sort key didn't change stays where it is.
+ * Elements are looked up through an index based on {@link Object#equals(Object)} and {@link Object#hashCode()}, that must not change while the element is in the list.
+ */
 public abstract class BaseSortingArrayList<E, S> extends ArrayList<E> {
+    private final Map<E, E> index = new HashMap<>();
     private S currentSort;
+    private int indexModCount = -1;
 
     public BaseSortingArrayList(List<E> objs, S defaultSorting) {
         super(objs);
@@ -23,17 +31,89 @@ public abstract class BaseSortingArrayList<E, S> extends ArrayList<E> {
     @NonNull
     public abstract Comparator<E> getComparator(S sorting);
 
+    public S getCurrentSort() {
+        return currentSort;
+    }
+
+    /**
+     * Changes the sorting without sorting the list
+     */
+    public void setCurrentSort(S sorting) {
+        currentSort = sorting;
+        indexModCount = -1;
+    }
+
     public void sort(S sorting) {
         currentSort = sorting;
         Collections.sort(this, getComparator(sorting));
     }
 
+    @Override
+    public E set(int index, E element) {
+        indexModCount = -1;
+        return super.set(index, element);
+    }
+
+    /**
+     * @return the position before (-1 if it wasn't there) and after the update
+     */
     public Pair<Integer, Integer> addAndSort(E element) {
-        int from = indexOf(element);
-        if (from == -1) add(element);
-        else set(from, element);
-        sort(currentSort);
-        int to = indexOf(element);
+        Comparator<E> comparator = getComparator(currentSort);
+        if (indexModCount != modCount) rebuildIndex(comparator);
+
+        int from = -1;
+        E old = index.get(element);
+        if (old != null) {
+            from = locate(old, comparator);
+            super.remove(from);
+        }
+
+        int to = bound(element, comparator, false);
+        if (from != -1) to = Math.max(bound(element, comparator, true), Math.min(from, to)); // Keep the order among equal elements, as a stable sort would
+        super.add(to, element);
+
+        index.remove(element);
+        index.put(element, element);
+        indexModCount = modCount;
         return new Pair<>(from, to);
     }
+
+    private void rebuildIndex(Comparator<E> comparator) {
+        Collections.sort(this, comparator);
+
+        index.clear();
+        for (E e : this) index.put(e, e);
+        indexModCount = modCount;
+    }
+
+    private int locate(E element, Comparator<E> comparator) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(get(mid), element) < 0) low = mid + 1;
+            else high = mid;
+        }
+
+        for (int i = low; i < size() && comparator.compare(get(i), element) == 0; i++)
+            if (get(i) == element) return i;
+
+        for (int i = 0; i < size(); i++) // Element changed in place, its sort key isn't reliable
+            if (get(i) == element) return i;
+
+        throw new IllegalStateException("Element not found: " + element);
+    }
+
+    private int bound(E element, Comparator<E> comparator, boolean lower) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparator.compare(get(mid), element);
+            if (cmp < 0 || (!lower && cmp == 0)) low = mid + 1;
+            else high = mid;
+        }
+
+        return low;
+    }
 }
@@ -0,0 +1,10 @@
+package com.gianlu.commonutils.Adapters;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Compose with {@link ItemFilters}, results are cached per item until the item is notified as changed
+ */
+public interface ItemFilter<E> {
+    boolean accept(@NonNull E item);
+}
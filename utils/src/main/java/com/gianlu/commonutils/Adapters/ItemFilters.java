@@ -0,0 +1,47 @@
+package com.gianlu.commonutils.Adapters;
+
+import android.support.annotation.NonNull;
+
+public final class ItemFilters {
+
+    private ItemFilters() {
+    }
+
+    @NonNull
+    @SafeVarargs
+    public static <E> ItemFilter<E> and(@NonNull final ItemFilter<E>... filters) {
+        return new ItemFilter<E>() {
+            @Override
+            public boolean accept(@NonNull E item) {
+                for (ItemFilter<E> filter : filters)
+                    if (!filter.accept(item)) return false;
+
+                return true;
+            }
+        };
+    }
+
+    @NonNull
+    @SafeVarargs
+    public static <E> ItemFilter<E> or(@NonNull final ItemFilter<E>... filters) {
+        return new ItemFilter<E>() {
+            @Override
+            public boolean accept(@NonNull E item) {
+                for (ItemFilter<E> filter : filters)
+                    if (filter.accept(item)) return true;
+
+                return false;
+            }
+        };
+    }
+
+    @NonNull
+    public static <E> ItemFilter<E> not(@NonNull final ItemFilter<E> filter) {
+        return new ItemFilter<E>() {
+            @Override
+            public boolean accept(@NonNull E item) {
+                return !filter.accept(item);
+            }
+        };
+    }
+}
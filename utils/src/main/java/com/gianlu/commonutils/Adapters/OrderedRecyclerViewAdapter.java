@@ -1,24 +1,63 @@
 package com.gianlu.commonutils.Adapters;
 
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Pair;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHolder, E extends Filterable<F>, S, F> extends RecyclerView.Adapter<VH> {
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "OrderedAdapter-diff");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Object ITEM_CHANGED = new Object();
+    private static final int QUERY_DEBOUNCE_MS = 150;
     protected final SortingArrayList objs;
     protected final List<F> filters;
     private final S defaultSorting;
     private final List<E> originalObjs;
+    private final Map<E, Long> indexPending = new HashMap<>();
+    private Handler handler;
+    private List<F> filterSetSource = Collections.emptyList();
+    private Set<F> filterSet = Collections.emptySet();
+    private ItemFilter<E> itemFilter;
+    private Map<E, Boolean> itemFilterCache = new ConcurrentHashMap<>();
     private String query;
+    private boolean asyncUpdates = false;
+    private volatile int generation = 0;
+    private SearchIndex.TextExtractor<E> textExtractor;
+    private SearchIndex<E> searchIndex;
+    private boolean indexBuilding = false;
+    private long indexStamp = 0;
+    private Runnable pendingQuery;
 
     public OrderedRecyclerViewAdapter(List<E> objs, S defaultSorting) {
         this.originalObjs = objs;
@@ -38,13 +77,208 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
     @Nullable
     protected abstract RecyclerView getRecyclerView();
 
-    private void processQueryAndFilters() {
-        objs.clear();
+    /**
+     * The lookup set follows {@link #filters}, that subclasses may still change directly. Uses an {@link EnumSet} for enum filters.
+     */
+    @NonNull
+    private Set<F> filterSet() {
+        if (!filterSetSource.equals(filters)) {
+            filterSetSource = new ArrayList<>(filters);
+            filterSet = newFilterSet(filterSetSource);
+        }
+
+        return filterSet;
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    private static <F> Set<F> newFilterSet(@NonNull Collection<F> filters) {
+        if (!filters.isEmpty() && !filters.contains(null)) {
+            F first = filters.iterator().next();
+            if (first instanceof Enum) {
+                EnumSet set = EnumSet.noneOf(((Enum) first).getDeclaringClass());
+                set.addAll(filters);
+                return set;
+            }
+        }
+
+        return new HashSet<>(filters);
+    }
+
+    /**
+     * When enabled, filtering, sorting and batch updates are computed with {@link DiffUtil} on a background thread
+     * and only the resulting changes are dispatched. Newer updates discard the ones still being computed.
+     * {@link #matchQuery(Filterable, String)}, {@link #areContentsTheSame(Filterable, Filterable)}, the {@link ItemFilter} and
+     * the {@link SearchIndex.TextExtractor} are then called on that thread too, and must not touch the views or unsynchronized state.
+     */
+    public final void setAsyncUpdates(boolean async) {
+        asyncUpdates = async;
+    }
+
+    /**
+     * When set, queries match the items whose extracted text contains them ignoring case instead of using {@link #matchQuery(Filterable, String)}.
+     * The text is indexed on a background thread, so the extractor must be thread-safe, and {@link #filterWithQuery(String)} is debounced.
+     */
+    public final void setSearchIndex(@Nullable SearchIndex.TextExtractor<E> extractor) {
+        textExtractor = extractor;
+        searchIndex = null;
+        indexPending.clear();
+        rebuildSearchIndex();
+    }
+
+    private void rebuildSearchIndex() {
+        if (textExtractor == null || indexBuilding) return;
+
+        indexBuilding = true;
+        final SearchIndex.TextExtractor<E> extractor = textExtractor;
+        final List<E> source = new ArrayList<>(originalObjs);
+        final long buildStamp = indexStamp;
+        final Handler handler = handler();
+
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SearchIndex<E> built = null;
+                try {
+                    built = new SearchIndex<>(source, extractor);
+                } finally {
+                    final SearchIndex<E> index = built;
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            indexBuilding = false;
+                            if (extractor != textExtractor) {
+                                rebuildSearchIndex();
+                            } else if (index != null) {
+                                searchIndex = index;
+
+                                List<E> replay = new ArrayList<>();
+                                Iterator<Map.Entry<E, Long>> iterator = indexPending.entrySet().iterator();
+                                while (iterator.hasNext()) {
+                                    Map.Entry<E, Long> entry = iterator.next();
+                                    if (entry.getValue() <= buildStamp) iterator.remove(); // Included in the build
+                                    else replay.add(entry.getKey());
+                                }
+
+                                if (!replay.isEmpty()) extractTexts(index, replay, indexStamp);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps using the current index, the changed items are checked linearly until their text has been extracted in background
+     */
+    private void itemsChanged(@NonNull List<E> items) {
+        if (textExtractor == null) return;
+
+        long stamp = ++indexStamp;
+        for (E item : items) {
+            indexPending.remove(item); // Keeps the latest instance as key
+            indexPending.put(item, stamp);
+        }
+
+        SearchIndex<E> index = searchIndex;
+        if (index == null) rebuildSearchIndex();
+        else extractTexts(index, items, stamp);
+    }
+
+    private void extractTexts(@NonNull final SearchIndex<E> index, @NonNull final List<E> items, final long stamp) {
+        final Handler handler = handler();
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<E, String> texts = new HashMap<>((int) (items.size() / 0.75f) + 1);
+                for (E item : items) texts.put(item, index.textOf(item));
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (index != searchIndex) return; // The new index replays what's still pending
+
+                        index.apply(texts);
+                        for (E item : items) {
+                            Long pending = indexPending.get(item);
+                            if (pending != null && pending <= stamp) indexPending.remove(item);
+                        }
+
+                        if (index.isStale(originalObjs.size())) rebuildSearchIndex();
+                    }
+                });
+            }
+        });
+    }
 
-        for (E obj : originalObjs)
-            if (!filters.contains(obj.getFilterable()) && (query == null || matchQuery(obj, query)))
-                objs.add(obj);
+    @NonNull
+    private Handler handler() {
+        if (handler == null) handler = new Handler(Looper.getMainLooper());
+        return handler;
+    }
 
+    private static <E extends Filterable<F>, F> boolean accepts(@NonNull E item, @NonNull Set<F> filters, @Nullable ItemFilter<E> itemFilter, @NonNull Map<E, Boolean> cache) {
+        if (filters.contains(item.getFilterable())) return false;
+        if (itemFilter == null) return true;
+
+        Boolean accepted = cache.get(item);
+        if (accepted == null) {
+            accepted = itemFilter.accept(item);
+            cache.put(item, accepted);
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Stale results may still be written to the old cache by a running asynchronous update, so that is replaced instead.
+     * It's also replaced when it holds more entries than there are items, so it doesn't keep the ones that left.
+     */
+    private void invalidateItemFilter(@Nullable E item) {
+        if (item == null || asyncUpdates || itemFilterCache.size() > originalObjs.size())
+            itemFilterCache = new ConcurrentHashMap<>();
+        else
+            itemFilterCache.remove(item);
+    }
+
+    private boolean matches(@NonNull E item, @Nullable String query) {
+        if (query == null) return true;
+
+        SearchIndex.TextExtractor<E> extractor = textExtractor;
+        if (extractor == null) return matchQuery(item, query);
+
+        String text = extractor.getText(item);
+        return text != null && text.toLowerCase(Locale.getDefault()).contains(query.toLowerCase(Locale.getDefault()));
+    }
+
+    @NonNull
+    private List<E> filter(@NonNull List<E> source, @NonNull Set<F> filters, @Nullable ItemFilter<E> itemFilter, @NonNull Map<E, Boolean> cache,
+                           @Nullable String query, @Nullable SearchIndex<E> index, @NonNull Set<E> pending) {
+        List<E> result = new ArrayList<>(source.size());
+        if (index != null && query != null && !query.isEmpty()) {
+            Set<E> matching = index.search(query);
+            for (E obj : source)
+                if ((pending.contains(obj) ? matches(obj, query) : matching.contains(obj)) && accepts(obj, filters, itemFilter, cache))
+                    result.add(obj);
+        } else {
+            for (E obj : source)
+                if (accepts(obj, filters, itemFilter, cache) && matches(obj, query))
+                    result.add(obj);
+        }
+
+        return result;
+    }
+
+    private void processQueryAndFilters() {
+        if (asyncUpdates) {
+            dispatchAsync(true);
+            return;
+        }
+
+        List<E> updated = filter(originalObjs, filterSet(), itemFilter, itemFilterCache, query, searchIndex, indexPending.keySet());
+        objs.clear();
+        objs.addAll(updated);
         objs.resort();
 
         shouldUpdateItemCount(objs.size());
@@ -54,6 +288,78 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
 
     protected abstract boolean matchQuery(@NonNull E item, @Nullable String query);
 
+    /**
+     * Used by the asynchronous updates to tell whether an item needs to be rebound, items are matched with {@link Object#equals(Object)}
+     */
+    protected boolean areContentsTheSame(@NonNull E oldItem, @NonNull E newItem) {
+        return false;
+    }
+
+    private void dispatchAsync(final boolean scrollToTop) {
+        final Handler handler = handler();
+        final int current = ++generation;
+        final List<E> source = new ArrayList<>(originalObjs);
+        final List<E> old = new ArrayList<>(objs);
+        final Set<F> currentFilters = filterSet();
+        final ItemFilter<E> currentItemFilter = itemFilter;
+        final Map<E, Boolean> cache = itemFilterCache;
+        final String currentQuery = query;
+        final SearchIndex<E> index = searchIndex;
+        final Set<E> pending = index == null ? Collections.<E>emptySet() : new HashSet<>(indexPending.keySet());
+        final Comparator<E> comparator = getComparatorFor(objs.getCurrentSort());
+
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (current != generation) return;
+
+                final List<E> updated = filter(source, currentFilters, currentItemFilter, cache, currentQuery, index, pending);
+                Collections.sort(updated, comparator);
+                if (current != generation) return;
+
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                    @Override
+                    public int getOldListSize() {
+                        return old.size();
+                    }
+
+                    @Override
+                    public int getNewListSize() {
+                        return updated.size();
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(int oldPos, int newPos) {
+                        return Objects.equals(old.get(oldPos), updated.get(newPos));
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(int oldPos, int newPos) {
+                        return OrderedRecyclerViewAdapter.this.areContentsTheSame(old.get(oldPos), updated.get(newPos));
+                    }
+
+                    @Override
+                    public Object getChangePayload(int oldPos, int newPos) {
+                        return new WeakReference<>(updated.get(newPos));
+                    }
+                });
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (current != generation) return;
+
+                        objs.clear();
+                        objs.addAll(updated);
+                        diff.dispatchUpdatesTo(OrderedRecyclerViewAdapter.this);
+                        shouldUpdateItemCount(objs.size());
+                        if (scrollToTop) scrollToTop();
+                    }
+                });
+            }
+        });
+    }
+
     private void scrollToTop() {
         RecyclerView recyclerView = getRecyclerView();
         if (recyclerView != null) recyclerView.scrollToPosition(0);
@@ -66,7 +372,9 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
             onBindViewHolder(holder, position);
         } else {
             Object payload = payloads.get(0);
-            if (payload instanceof WeakReference) {
+            if (payload == ITEM_CHANGED) {
+                onBindViewHolder(holder, position, objs.get(position));
+            } else if (payload instanceof WeakReference) {
                 WeakReference<E> castPayload = (WeakReference<E>) payload;
                 if (castPayload.get() != null)
                     onBindViewHolder(holder, position, castPayload.get());
@@ -85,8 +393,15 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
         int pos = originalObjs.indexOf(payload);
         if (pos == -1) originalObjs.add(payload);
         else originalObjs.set(pos, payload);
+        invalidateItemFilter(payload);
+        itemsChanged(Collections.singletonList(payload));
+
+        if (asyncUpdates) {
+            dispatchAsync(false);
+            return;
+        }
 
-        if (!filters.contains(payload.getFilterable()) && matchQuery(payload, query)) {
+        if (accepts(payload, filterSet(), itemFilter, itemFilterCache) && matches(payload, query)) {
             Pair<Integer, Integer> res = objs.addAndSort(payload);
             if (res.first == -1)
                 super.notifyItemInserted(res.second);
@@ -97,24 +412,226 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
         }
     }
 
-    private void notifyItemRemoved(E item) {
-        originalObjs.remove(item);
+    /**
+     * Replaces all the items with the given snapshot, only the differences are dispatched
+     */
+    public final void notifyItemsChanged(List<E> items) {
+        List<E> snapshot = new ArrayList<>(items); // May be the list given to the constructor
+        originalObjs.clear();
+        originalObjs.addAll(snapshot);
+        invalidateItemFilter(null);
+        itemsChanged(snapshot);
+
+        if (asyncUpdates) {
+            dispatchAsync(false);
+            return;
+        }
 
-        int pos = objs.indexOf(item);
-        if (pos != -1) {
-            objs.remove(pos);
-            super.notifyItemRemoved(pos);
+        List<E> updated = filter(originalObjs, filterSet(), itemFilter, itemFilterCache, query, searchIndex, indexPending.keySet());
+        Collections.sort(updated, getComparatorFor(objs.getCurrentSort()));
+        reconcile(updated);
+        shouldUpdateItemCount(objs.size());
+    }
+
+    /**
+     * Moves from the current sorted list to the new one with coalesced range notifications: removals first, then a single walk over the new list.
+     * The longest run of items already in the right relative order stays in place, only the others are moved. Changes are dispatched last, by final position.
+     */
+    private void reconcile(List<E> updated) {
+        Set<E> updatedKeys = new HashSet<>(updated);
+        RangeDispatcher dispatcher = new RangeDispatcher();
+
+        for (int i = objs.size() - 1; i >= 0; i--)
+            if (!updatedKeys.contains(objs.get(i))) dispatcher.removed(i);
+
+        dispatcher.flush();
+
+        List<E> current = new ArrayList<>(objs.size());
+        Map<E, Integer> oldPositions = new HashMap<>((int) (objs.size() / 0.75f) + 1);
+        for (E item : objs) {
+            if (updatedKeys.contains(item)) {
+                oldPositions.put(item, current.size());
+                current.add(item);
+            }
+        }
+
+        int[] from = new int[updated.size()];
+        for (int i = 0; i < from.length; i++) {
+            Integer pos = oldPositions.get(updated.get(i));
+            from[i] = pos == null ? -1 : pos;
+        }
+
+        boolean[] stays = longestIncreasing(from);
+
+        // Items are ordered by (anchor, new position), where the anchor is the old position of the closest preceding item that stays
+        long[] keys = new long[current.size() + from.length];
+        int count = 0;
+        for (int i = 0; i < current.size(); i++) keys[count++] = (long) (i + 1) << 32;
+        int anchor = -1;
+        for (int i = 0; i < from.length; i++) {
+            if (stays[i]) anchor = from[i];
+            else keys[count++] = ((long) (anchor + 1) << 32) | (i + 1);
         }
+
+        PositionTree tree = new PositionTree(Arrays.copyOf(keys, count));
+        for (int i = 0; i < current.size(); i++) tree.add((long) (i + 1) << 32);
+
+        boolean[] changed = new boolean[from.length];
+        anchor = -1;
+        for (int i = 0; i < from.length; i++) {
+            E item = updated.get(i);
+            if (stays[i]) {
+                anchor = from[i];
+                changed[i] = !areContentsTheSame(current.get(from[i]), item);
+                continue;
+            }
+
+            long key = ((long) (anchor + 1) << 32) | (i + 1);
+            if (from[i] == -1) {
+                tree.add(key);
+                dispatcher.inserted(tree.rank(key));
+            } else {
+                long oldKey = (long) (from[i] + 1) << 32;
+                int fromPos = tree.rank(oldKey);
+                tree.remove(oldKey);
+                tree.add(key);
+                dispatcher.moved(fromPos, tree.rank(key));
+                changed[i] = !areContentsTheSame(current.get(from[i]), item);
+            }
+        }
+
+        dispatcher.flush();
+
+        for (int i = 0; i < changed.length; i++)
+            if (changed[i]) dispatcher.changed(i);
+
+        dispatcher.flush();
+
+        objs.clear();
+        objs.addAll(updated);
     }
 
-    public final void notifyItemsChanged(List<E> items) {
-        for (E obj : new ArrayList<>(objs))
-            if (!items.contains(obj))
-                notifyItemRemoved(obj);
+    /**
+     * @return which of the non negative values form a longest strictly increasing subsequence
+     */
+    @NonNull
+    private static boolean[] longestIncreasing(@NonNull int[] values) {
+        int[] tails = new int[values.length];
+        int[] prev = new int[values.length];
+        int len = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] < 0) continue;
+
+            int low = 0;
+            int high = len;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) low = mid + 1;
+                else high = mid;
+            }
 
-        for (E item : items) notifyItemChanged(item);
+            prev[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == len) len++;
+        }
 
-        shouldUpdateItemCount(objs.size());
+        boolean[] result = new boolean[values.length];
+        for (int i = len > 0 ? tails[len - 1] : -1; i >= 0; i = prev[i]) result[i] = true;
+        return result;
+    }
+
+    /**
+     * Fenwick tree over a fixed set of sorted keys, tells the position of a key among the ones present
+     */
+    private static class PositionTree {
+        private final long[] keys;
+        private final int[] tree;
+
+        PositionTree(@NonNull long[] keys) {
+            Arrays.sort(keys);
+            this.keys = keys;
+            this.tree = new int[keys.length + 1];
+        }
+
+        void add(long key) {
+            update(key, 1);
+        }
+
+        void remove(long key) {
+            update(key, -1);
+        }
+
+        private void update(long key, int delta) {
+            for (int i = Arrays.binarySearch(keys, key) + 1; i < tree.length; i += i & -i)
+                tree[i] += delta;
+        }
+
+        /**
+         * @return how many present keys are smaller than the given one
+         */
+        int rank(long key) {
+            int sum = 0;
+            for (int i = Arrays.binarySearch(keys, key); i > 0; i -= i & -i)
+                sum += tree[i];
+            return sum;
+        }
+    }
+
+    private class RangeDispatcher {
+        private static final int NONE = 0;
+        private static final int REMOVED = 1;
+        private static final int INSERTED = 2;
+        private static final int CHANGED = 3;
+        private int type = NONE;
+        private int start;
+        private int count;
+
+        void removed(int position) {
+            if (type == REMOVED && position == start - 1) {
+                start--;
+                count++;
+            } else {
+                begin(REMOVED, position);
+            }
+        }
+
+        void inserted(int position) {
+            if (type == INSERTED && position == start + count) count++;
+            else begin(INSERTED, position);
+        }
+
+        void changed(int position) {
+            if (type == CHANGED && position == start + count) count++;
+            else begin(CHANGED, position);
+        }
+
+        void moved(int from, int to) {
+            flush();
+            notifyItemMoved(from, to);
+        }
+
+        private void begin(int type, int position) {
+            flush();
+            this.type = type;
+            this.start = position;
+            this.count = 1;
+        }
+
+        void flush() {
+            switch (type) {
+                case REMOVED:
+                    notifyItemRangeRemoved(start, count);
+                    break;
+                case INSERTED:
+                    notifyItemRangeInserted(start, count);
+                    break;
+                case CHANGED:
+                    notifyItemRangeChanged(start, count, ITEM_CHANGED);
+                    break;
+            }
+
+            type = NONE;
+        }
     }
 
     public final void setFilters(@NonNull List<F> newFilters) {
@@ -123,9 +640,33 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
         processQueryAndFilters();
     }
 
+    /**
+     * Items must also be accepted by this filter to be shown, its results are cached until the item is notified as changed
+     */
+    public final void setItemFilter(@Nullable ItemFilter<E> filter) {
+        itemFilter = filter;
+        invalidateItemFilter(null);
+        processQueryAndFilters();
+    }
+
     public final void filterWithQuery(String query) {
         this.query = query;
-        processQueryAndFilters();
+        if (textExtractor == null) {
+            processQueryAndFilters();
+            return;
+        }
+
+        Handler handler = handler();
+        if (pendingQuery != null) handler.removeCallbacks(pendingQuery);
+        pendingQuery = new Runnable() {
+            @Override
+            public void run() {
+                pendingQuery = null;
+                processQueryAndFilters();
+            }
+        };
+
+        handler.postDelayed(pendingQuery, QUERY_DEBOUNCE_MS);
     }
 
     @Override
@@ -139,6 +680,12 @@ public abstract class OrderedRecyclerViewAdapter<VH extends RecyclerView.ViewHol
     public abstract Comparator<E> getComparatorFor(S sorting);
 
     public final void sort(S sorting) {
+        if (asyncUpdates) {
+            objs.setCurrentSort(sorting);
+            dispatchAsync(true);
+            return;
+        }
+
         objs.sort(sorting);
         super.notifyDataSetChanged();
         scrollToTop();
@@ -0,0 +1,156 @@
+package com.gianlu.commonutils.Adapters;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the text of a list of items, a query matches the items whose text contains it ignoring case.
+ * Refining the last query (typing more characters) only checks the previous results.
+ * Items whose text changed after the index was built are kept aside and checked linearly, see {@link #apply(Map)}.
+ */
+public final class SearchIndex<E> {
+    private static final int MIN_STALE_UPDATES = 256;
+    private final TextExtractor<E> extractor;
+    private final Object[] items;
+    private final String[] texts;
+    private final Map<E, Integer> slots;
+    private final Map<Long, int[]> postings;
+    private final Map<E, String> updated = new HashMap<>();
+    private String lastQuery = null;
+    private BitSet lastResult = null;
+
+    SearchIndex(@NonNull List<E> items, @NonNull TextExtractor<E> extractor) {
+        this.extractor = extractor;
+        this.items = items.toArray();
+        this.texts = new String[items.size()];
+        this.slots = new HashMap<>((int) (texts.length / 0.75f) + 1);
+
+        Map<Long, int[]> postings = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (int i = 0; i < texts.length; i++) {
+            E item = items.get(i);
+            texts[i] = textOf(item);
+            slots.put(item, i);
+
+            for (int j = 0; j + 3 <= texts[i].length(); j++) {
+                Long trigram = trigram(texts[i], j);
+                int[] list = postings.get(trigram);
+                Integer size = sizes.get(trigram);
+                if (list == null) {
+                    list = new int[4];
+                    size = 0;
+                } else if (list[size - 1] == i) {
+                    continue;
+                } else if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                }
+
+                list[size] = i;
+                postings.put(trigram, list);
+                sizes.put(trigram, size + 1);
+            }
+        }
+
+        for (Map.Entry<Long, int[]> entry : postings.entrySet())
+            entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+
+        this.postings = postings;
+    }
+
+    private static long trigram(@NonNull String str, int at) {
+        return ((long) str.charAt(at) << 32) | ((long) str.charAt(at + 1) << 16) | str.charAt(at + 2);
+    }
+
+    /**
+     * Doesn't touch the index, can be called from any thread
+     */
+    @NonNull
+    String textOf(@NonNull E item) {
+        String text = extractor.getText(item);
+        return text == null ? "" : text.toLowerCase(Locale.getDefault());
+    }
+
+    /**
+     * Applies the texts of new or changed items, obtained with {@link #textOf(Object)}. An item is only checked linearly if its text differs from the indexed one.
+     */
+    synchronized void apply(@NonNull Map<E, String> changed) {
+        for (Map.Entry<E, String> entry : changed.entrySet()) {
+            E item = entry.getKey();
+            Integer slot = slots.get(item);
+            if (slot != null && texts[slot].equals(entry.getValue())) updated.remove(item);
+            else updated.put(item, entry.getValue());
+        }
+    }
+
+    /**
+     * @return whether enough items changed, or were removed, that the index should be rebuilt
+     */
+    synchronized boolean isStale(int size) {
+        return updated.size() > Math.max(MIN_STALE_UPDATES, texts.length / 4) || size < texts.length / 2;
+    }
+
+    /**
+     * @return the matching items, compared with {@link Object#equals(Object)}. Items that have been removed may be included.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    synchronized Set<E> search(@NonNull String query) {
+        String q = query.toLowerCase(Locale.getDefault());
+        BitSet indexed = searchIndexed(q);
+
+        Set<E> result = new HashSet<>((int) ((indexed.cardinality() + updated.size()) / 0.75f) + 1);
+        for (int i = indexed.nextSetBit(0); i >= 0; i = indexed.nextSetBit(i + 1)) {
+            E item = (E) items[i];
+            if (!updated.containsKey(item)) result.add(item);
+        }
+
+        for (Map.Entry<E, String> entry : updated.entrySet())
+            if (entry.getValue().contains(q)) result.add(entry.getKey());
+
+        return result;
+    }
+
+    @NonNull
+    private BitSet searchIndexed(@NonNull String q) {
+        BitSet result = new BitSet(texts.length);
+        if (lastQuery != null && q.contains(lastQuery)) {
+            result.or(lastResult);
+        } else if (q.length() >= 3) {
+            int[] smallest = null;
+            for (int j = 0; j + 3 <= q.length(); j++) {
+                int[] list = postings.get(trigram(q, j));
+                if (list == null) {
+                    smallest = new int[0];
+                    break;
+                } else if (smallest == null || list.length < smallest.length) {
+                    smallest = list;
+                }
+            }
+
+            for (int i : smallest) result.set(i);
+        } else {
+            result.set(0, texts.length);
+        }
+
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1))
+            if (!texts[i].contains(q)) result.clear(i);
+
+        lastQuery = q;
+        lastResult = (BitSet) result.clone();
+        return result;
+    }
+
+    public interface TextExtractor<E> {
+        @Nullable
+        String getText(@NonNull E item);
+    }
+}
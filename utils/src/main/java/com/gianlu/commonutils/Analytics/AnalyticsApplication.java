@@ -38,6 +38,8 @@ public abstract class AnalyticsApplication extends Application implements Thread
     @Override
     public final void uncaughtException(Thread thread, Throwable throwable) {
         Logging.log(throwable);
+        Logging.flush();
+        Logging.dumpCrashLog(throwable);
 
         if (!CommonUtils.isDebug()) {
             Crashlytics.logException(throwable);
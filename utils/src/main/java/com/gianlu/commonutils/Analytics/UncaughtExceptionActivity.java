@@ -8,8 +8,10 @@ import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.Button;
+import android.widget.TextView;
 
 import com.gianlu.commonutils.CommonUtils;
+import com.gianlu.commonutils.Logging;
 import com.gianlu.commonutils.R;
 
 public class UncaughtExceptionActivity extends AppCompatActivity {
@@ -44,5 +46,22 @@ public class UncaughtExceptionActivity extends AppCompatActivity {
                 CommonUtils.sendEmail(UncaughtExceptionActivity.this, getIntent().getStringExtra("appName"), (Throwable) getIntent().getSerializableExtra("exception"));
             }
         });
+
+        final String crashLog = Logging.getCrashLog(this);
+        final View logsContainer = findViewById(R.id.uncaughtException_logsContainer);
+        final Button showLogs = findViewById(R.id.uncaughtException_showLogs);
+        if (crashLog == null) {
+            showLogs.setVisibility(View.GONE);
+        } else {
+            showLogs.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    TextView logs = findViewById(R.id.uncaughtException_logs);
+                    logs.setText(crashLog);
+                    logsContainer.setVisibility(View.VISIBLE);
+                    showLogs.setVisibility(View.GONE);
+                }
+            });
+        }
     }
 }
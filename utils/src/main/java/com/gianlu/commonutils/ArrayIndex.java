@@ -0,0 +1,44 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Identity lookups on an array that doesn't change, small arrays are scanned and bigger ones are hashed once.
+ * Behaves like {@link CommonUtils#indexOf(Object[], Object)} and {@link CommonUtils#contains(Object[], Object)}.
+ */
+public final class ArrayIndex<T> {
+    private static final int HASH_THRESHOLD = 16;
+    private final T[] items;
+    private final Map<T, Integer> index;
+
+    public ArrayIndex(@NonNull T[] items) {
+        this.items = items;
+
+        if (items.length > HASH_THRESHOLD) {
+            index = new IdentityHashMap<>(items.length);
+            for (int i = items.length - 1; i >= 0; i--) index.put(items[i], i);
+        } else {
+            index = null;
+        }
+    }
+
+    public int indexOf(T item) {
+        if (index != null) {
+            Integer i = index.get(item);
+            return i == null ? -1 : i;
+        }
+
+        for (int i = 0; i < items.length; i++)
+            if (items[i] == item)
+                return i;
+
+        return -1;
+    }
+
+    public boolean contains(T item) {
+        return indexOf(item) != -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Record layout: varint timestamp, level byte (high bit set if a stack trace follows),
+ * varint length and UTF-8 message, optionally varint length and UTF-8 stack trace.
+ * The sidecar index holds fixed size (minute, offset) entries for the first record of every minute.
+ */
+final class BinaryLogFormat {
+    static final String EXTENSION = ".bin";
+    static final String INDEX_EXTENSION = ".idx";
+    static final int FLAG_TRACE = 0x80;
+    static final int INDEX_ENTRY_SIZE = 12;
+    static final int MAX_VARINT_SIZE = 10;
+    private static final Logging.LogLine.Type[] LEVELS = { // Indexed by the stored level code, only append
+            Logging.LogLine.Type.INFO,
+            Logging.LogLine.Type.WARNING,
+            Logging.LogLine.Type.ERROR,
+            Logging.LogLine.Type.DEBUG
+    };
+
+    private BinaryLogFormat() {
+    }
+
+    static boolean isBinary(@NonNull File file) {
+        String name = file.getName();
+        if (name.endsWith(LogRotator.COMPRESSED_EXTENSION))
+            name = name.substring(0, name.length() - LogRotator.COMPRESSED_EXTENSION.length());
+
+        return name.endsWith(EXTENSION);
+    }
+
+    @NonNull
+    static File indexFor(@NonNull File file) {
+        return new File(file.getParentFile(), file.getName() + INDEX_EXTENSION);
+    }
+
+    static int levelCode(@NonNull Logging.LogLine.Type type) {
+        for (int i = 0; i < LEVELS.length; i++)
+            if (LEVELS[i] == type) return i;
+
+        throw new IllegalArgumentException("Unknown level: " + type);
+    }
+
+    @Nullable
+    static Logging.LogLine.Type levelOf(int code) {
+        return code < LEVELS.length ? LEVELS[code] : null;
+    }
+
+    static void putVarint(@NonNull ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @return the offset of the last indexed record written before the given minute, or 0
+     */
+    static long findOffset(@NonNull File index, long minute) throws IOException {
+        if (!index.exists()) return 0;
+
+        try (RandomAccessFile file = new RandomAccessFile(index, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+            long offset = 0;
+            long low = 0;
+            long high = channel.size() / INDEX_ENTRY_SIZE;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                readEntry(channel, mid, entry);
+                if (entry.getInt() < minute) {
+                    offset = entry.getLong();
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return offset;
+        }
+    }
+
+    private static void readEntry(@NonNull FileChannel channel, long index, @NonNull ByteBuffer entry) throws IOException {
+        entry.clear();
+        long position = index * INDEX_ENTRY_SIZE;
+        while (entry.hasRemaining()) {
+            int read = channel.read(entry, position + entry.position());
+            if (read == -1) throw new EOFException();
+        }
+
+        entry.flip();
+    }
+}
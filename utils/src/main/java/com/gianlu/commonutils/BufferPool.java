@@ -0,0 +1,123 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of byte arrays grouped in power of two size classes, each class retains a bounded number of arrays.
+ * In debug builds arrays that are garbage collected without being released are reported as leaks.
+ */
+public final class BufferPool {
+    private static final BufferPool instance = new BufferPool(4 * 1024, 1024 * 1024, 4);
+    private final int minShift;
+    private final int maxSize;
+    private final ArrayBlockingQueue<byte[]>[] classes;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final Map<byte[], Tracked> outstanding = new WeakHashMap<>();
+    private final ReferenceQueue<byte[]> leaked = new ReferenceQueue<>();
+
+    /**
+     * @param minSize     smallest size class, rounded up to a power of two
+     * @param maxSize     bigger requests are allocated and dropped without being pooled
+     * @param maxPerClass maximum number of arrays retained for every size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int minSize, int maxSize, int maxPerClass) {
+        if (minSize <= 0 || maxSize < minSize || maxPerClass <= 0)
+            throw new IllegalArgumentException("Invalid pool configuration");
+
+        this.minShift = 32 - Integer.numberOfLeadingZeros(minSize - 1);
+        this.maxSize = maxSize;
+
+        int count = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxSize - 1) - minShift + 1);
+        this.classes = new ArrayBlockingQueue[count];
+        for (int i = 0; i < count; i++) classes[i] = new ArrayBlockingQueue<>(maxPerClass);
+    }
+
+    @NonNull
+    public static BufferPool get() {
+        return instance;
+    }
+
+    /**
+     * @return an array at least {@code minLength} long, must be given back with {@link #release(byte[])}
+     */
+    @NonNull
+    public byte[] acquire(int minLength) {
+        byte[] buffer;
+        if (minLength > maxSize) {
+            misses.incrementAndGet();
+            buffer = new byte[minLength];
+        } else {
+            int index = classIndex(minLength);
+            buffer = classes[index].poll();
+            if (buffer == null) {
+                misses.incrementAndGet();
+                buffer = new byte[1 << (index + minShift)];
+            } else {
+                hits.incrementAndGet();
+            }
+        }
+
+        if (CommonUtils.isDebug()) track(buffer);
+        return buffer;
+    }
+
+    public void release(@NonNull byte[] buffer) {
+        if (CommonUtils.isDebug()) untrack(buffer);
+
+        int length = buffer.length;
+        if (length > maxSize || Integer.bitCount(length) != 1 || length < (1 << minShift)) return;
+        classes[classIndex(length)].offer(buffer);
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private int classIndex(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, length - 1));
+        return Math.max(0, shift - minShift);
+    }
+
+    private void track(byte[] buffer) {
+        synchronized (outstanding) {
+            reportLeaks();
+            outstanding.put(buffer, new Tracked(buffer, leaked));
+        }
+    }
+
+    private void untrack(byte[] buffer) {
+        synchronized (outstanding) {
+            Tracked tracked = outstanding.remove(buffer);
+            if (tracked != null) tracked.clear();
+            reportLeaks();
+        }
+    }
+
+    private void reportLeaks() {
+        Reference<? extends byte[]> ref;
+        while ((ref = leaked.poll()) != null)
+            Logging.log(Logging.LogLine.Type.WARNING, "Pooled buffer was never released, acquired at: " + Logging.getStackTrace(((Tracked) ref).acquiredAt));
+    }
+
+    private static class Tracked extends WeakReference<byte[]> {
+        private final Throwable acquiredAt = new Throwable();
+
+        Tracked(byte[] buffer, ReferenceQueue<byte[]> queue) {
+            super(buffer, queue);
+        }
+    }
+}
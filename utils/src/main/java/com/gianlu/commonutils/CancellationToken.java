@@ -0,0 +1,16 @@
+package com.gianlu.commonutils;
+
+/**
+ * Lets another thread stop a running copy, which then fails with an {@link java.io.InterruptedIOException}
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
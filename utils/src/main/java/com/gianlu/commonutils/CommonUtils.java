@@ -13,6 +13,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.TextInputLayout;
 import android.support.v7.widget.RecyclerView;
+import android.util.JsonReader;
 import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
@@ -31,21 +32,22 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.text.DecimalFormat;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormatSymbols;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -53,11 +55,21 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
-import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class CommonUtils {
+    public static final String VERBAL_DATE_PATTERN = "dd MMM";
+    public static final String FULL_DATE_PATTERN = "hh:mm:ss dd/MM/yyyy";
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int PARALLEL_CHUNK = 128;
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+    private static volatile int copyBufferSize = 64 * 1024;
+    private static final String[] DIMENSION_UNITS = new String[]{"B", "KB", "MB", "GB", "TB"};
+    private static final String[] SPEED_UNITS = new String[]{"B/s", "KB/s", "MB/s", "GB/s", "TB/s"};
     private static boolean DEBUG = BuildConfig.DEBUG;
 
     public static List<NameValuePair> splitQuery(URL url) {
@@ -65,40 +77,17 @@ public final class CommonUtils {
     }
 
     public static List<NameValuePair> splitQuery(String query) {
-        try {
-            List<NameValuePair> queryPairs = new ArrayList<>();
-            String[] pairs = query.split("&");
-            for (String pair : pairs) {
-                int idx = pair.indexOf("=");
-                if (idx > 0)
-                    queryPairs.add(new NameValuePair(
-                            URLDecoder.decode(pair.substring(0, idx), "UTF-8"),
-                            URLDecoder.decode(pair.substring(idx + 1), "UTF-8")));
-            }
+        QueryParams params = QueryParams.parse(query);
+        List<NameValuePair> queryPairs = new ArrayList<>(params.size());
+        for (int i = 0; i < params.size(); i++)
+            queryPairs.add(new NameValuePair(params.key(i), params.value(i)));
 
-            return queryPairs;
-        } catch (UnsupportedEncodingException ex) {
-            throw new RuntimeException(ex);
-        }
+        return queryPairs;
     }
 
     public static String formQuery(List<NameValuePair> pairs) {
-        StringBuilder builder = new StringBuilder();
-        boolean first = true;
-
-        try {
-            for (NameValuePair pair : pairs) {
-                if (!first) builder.append("&");
-                builder.append(URLEncoder.encode(pair.key(), "UTF-8"))
-                        .append("=")
-                        .append(URLEncoder.encode(pair.value(""), "UTF-8"));
-
-                first = false;
-            }
-        } catch (UnsupportedEncodingException ex) {
-            throw new RuntimeException(ex);
-        }
-
+        QueryBuilder builder = new QueryBuilder(pairs.size() * 16);
+        for (NameValuePair pair : pairs) builder.add(pair.key(), pair.value(""));
         return builder.toString();
     }
 
@@ -122,16 +111,39 @@ public final class CommonUtils {
 
     public static ArrayList<String> toStringsList(JSONArray array, boolean checkForDuplicates) throws JSONException {
         if (array == null) return new ArrayList<>();
-        ArrayList<String> list = new ArrayList<>();
+        ArrayList<String> list = new ArrayList<>(array.length());
+        Set<String> seen = checkForDuplicates ? new HashSet<String>() : null;
         for (int i = 0; i < array.length(); i++) {
             String val = array.getString(i);
-            if (!checkForDuplicates || !list.contains(val)) list.add(val);
+            if (seen == null || seen.add(val)) list.add(val);
         }
         return list;
     }
 
+    /**
+     * Streaming version of {@link #toStringsList(JSONArray, boolean)}, the stream is closed
+     */
+    public static ArrayList<String> toStringsList(Reader in, boolean checkForDuplicates) throws IOException {
+        ArrayList<String> list = new ArrayList<>();
+        Set<String> seen = checkForDuplicates ? new HashSet<String>() : null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String val = nextString(reader);
+                if (seen == null || seen.add(val)) list.add(val);
+            }
+            reader.endArray();
+        }
+
+        return list;
+    }
+
+    public static ArrayList<String> toStringsList(InputStream in, boolean checkForDuplicates) throws IOException {
+        return toStringsList(new InputStreamReader(in, "UTF-8"), checkForDuplicates);
+    }
+
     public static HashMap<String, Object> toMap(JSONObject obj) throws JSONException {
-        HashMap<String, Object> map = new HashMap<>();
+        HashMap<String, Object> map = new HashMap<>(mapCapacity(obj.length()));
 
         Iterator<String> iterator = obj.keys();
         while (iterator.hasNext()) {
@@ -143,7 +155,7 @@ public final class CommonUtils {
     }
 
     public static <T> HashMap<String, T> toMap(JSONObject obj, Class<T> valueClass) throws JSONException {
-        HashMap<String, T> map = new HashMap<>();
+        HashMap<String, T> map = new HashMap<>(mapCapacity(obj.length()));
 
         Iterator<String> iterator = obj.keys();
         while (iterator.hasNext()) {
@@ -154,16 +166,93 @@ public final class CommonUtils {
         return map;
     }
 
-    public static JSONObject toJSONObject(Map<String, Object> map) throws JSONException {
+    /**
+     * Converts the object and everything nested in it into {@link HashMap}s, {@link ArrayList}s and plain values, {@link JSONObject#NULL} becomes {@code null}
+     */
+    public static HashMap<String, Object> toJavaMap(JSONObject obj) throws JSONException {
+        HashMap<String, Object> map = new HashMap<>(mapCapacity(obj.length()));
+
+        Iterator<String> iterator = obj.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            map.put(key, toJava(obj.get(key), false));
+        }
+
+        return map;
+    }
+
+    /**
+     * Like {@link #toJavaMap(JSONObject)}, but objects become {@link CompactMap}s and arrays unmodifiable lists
+     */
+    @SuppressWarnings("unchecked")
+    public static CompactMap<Object> toCompactMap(JSONObject obj) throws JSONException {
+        return (CompactMap<Object>) toJava(obj, true);
+    }
+
+    public static ArrayList<Object> toJavaList(JSONArray array) throws JSONException {
+        ArrayList<Object> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) list.add(toJava(array.get(i), false));
+        return list;
+    }
+
+    @Nullable
+    private static Object toJava(Object value, boolean compact) throws JSONException {
+        if (value instanceof JSONObject) {
+            if (!compact) return toJavaMap((JSONObject) value);
+
+            JSONObject obj = (JSONObject) value;
+            String[] keys = new String[obj.length()];
+            Iterator<String> iterator = obj.keys();
+            for (int i = 0; iterator.hasNext(); i++) keys[i] = iterator.next();
+            Arrays.sort(keys);
+
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) values[i] = toJava(obj.get(keys[i]), true);
+            return CompactMap.wrap(keys, values);
+        } else if (value instanceof JSONArray) {
+            if (!compact) return toJavaList((JSONArray) value);
+
+            JSONArray array = (JSONArray) value;
+            Object[] list = new Object[array.length()];
+            for (int i = 0; i < list.length; i++) list[i] = toJava(array.get(i), true);
+            return Collections.unmodifiableList(Arrays.asList(list));
+        } else if (value == JSONObject.NULL) {
+            return null;
+        } else {
+            return value;
+        }
+    }
+
+    private static int mapCapacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    /**
+     * Nested maps and collections are converted too, keys with a {@code null} value are left out
+     */
+    public static JSONObject toJSONObject(Map<String, ?> map) throws JSONException {
         JSONObject obj = new JSONObject();
         if (map == null) return obj;
 
-        for (Map.Entry<String, Object> entry : map.entrySet())
-            obj.put(entry.getKey(), entry.getValue());
+        for (Map.Entry<String, ?> entry : map.entrySet())
+            obj.put(entry.getKey(), toJSON(entry.getValue()));
 
         return obj;
     }
 
+    @SuppressWarnings("unchecked")
+    private static Object toJSON(Object value) throws JSONException {
+        if (value instanceof Map) {
+            return toJSONObject((Map<String, ?>) value);
+        } else if (value instanceof Collection) {
+            JSONArray array = new JSONArray();
+            for (Object item : (Collection<?>) value) array.put(toJSON(item));
+            return array;
+        } else {
+            return value;
+        }
+    }
+
     public static boolean isExpanded(View v) {
         return v.getVisibility() == View.VISIBLE;
     }
@@ -266,28 +355,69 @@ public final class CommonUtils {
 
     @NonNull
     public static String dimensionFormatter(float v, boolean si) {
-        if (v <= 0) {
-            return "0 B";
-        } else {
-            final String[] units = new String[]{"B", "KB", "MB", "GB", "TB"};
-            int digitGroups = (int) (Math.log10(v) / Math.log10(si ? 1000 : 1024));
-            if (digitGroups > 4) return "∞ B";
-            return new DecimalFormat("#,##0.#").format(v / Math.pow(si ? 1000 : 1024, digitGroups)) + " " + units[digitGroups];
-        }
+        return dimensionFormatter(new StringBuilder(16), v, si).toString();
+    }
+
+    /**
+     * Same as {@link #dimensionFormatter(float, boolean)}, but appends to the given builder without allocating
+     */
+    @NonNull
+    public static StringBuilder dimensionFormatter(@NonNull StringBuilder out, float v, boolean si) {
+        return unitFormatter(out, v, si, DIMENSION_UNITS);
     }
 
     @NonNull
     public static String speedFormatter(float v, boolean si) {
-        if (v <= 0) {
-            return "0 B/s";
+        return speedFormatter(new StringBuilder(16), v, si).toString();
+    }
+
+    /**
+     * Same as {@link #speedFormatter(float, boolean)}, but appends to the given builder without allocating
+     */
+    @NonNull
+    public static StringBuilder speedFormatter(@NonNull StringBuilder out, float v, boolean si) {
+        return unitFormatter(out, v, si, SPEED_UNITS);
+    }
+
+    @NonNull
+    private static StringBuilder unitFormatter(@NonNull StringBuilder out, float v, boolean si, @NonNull String[] units) {
+        if (v <= 0) return out.append("0 ").append(units[0]);
+
+        int base = si ? 1000 : 1024;
+        double value = v;
+        int group = 0;
+        while (value >= base && group < units.length) {
+            value /= base;
+            group++;
+        }
+
+        if (group >= units.length) return out.append("∞ ").append(units[0]);
+
+        FormatSymbols symbols = FormatSymbols.get();
+        long tenths = (long) Math.rint(value * 10);
+        appendGrouped(out, tenths / 10, symbols);
+        if (tenths % 10 != 0) out.append(symbols.decimal).append((char) (symbols.zero + tenths % 10));
+        return out.append(' ').append(units[group]);
+    }
+
+    private static void appendGrouped(@NonNull StringBuilder out, long value, @NonNull FormatSymbols symbols) {
+        if (value >= 1000) {
+            appendGrouped(out, value / 1000, symbols);
+            out.append(symbols.grouping);
+            appendDigits(out, value % 1000, 3, symbols.zero);
         } else {
-            final String[] units = new String[]{"B/s", "KB/s", "MB/s", "GB/s", "TB/s"};
-            int digitGroups = (int) (Math.log10(v) / Math.log10(si ? 1000 : 1024));
-            if (digitGroups > 4) return "∞ B/s";
-            return new DecimalFormat("#,##0.#").format(v / Math.pow(si ? 1000 : 1024, digitGroups)) + " " + units[digitGroups];
+            appendDigits(out, value, 1, symbols.zero);
         }
     }
 
+    private static void appendDigits(@NonNull StringBuilder out, long value, int minDigits, char zero) {
+        long divisor = 1;
+        for (int i = 1; i < minDigits || divisor * 10 <= value; i++) divisor *= 10;
+
+        for (; divisor > 0; divisor /= 10)
+            out.append((char) (zero + (value / divisor) % 10));
+    }
+
     public static void sendEmail(Context context, String appName, @Nullable Throwable sendEx) {
         String version;
         try {
@@ -337,6 +467,9 @@ public final class CommonUtils {
         return Color.argb(Math.min(Math.round(Color.alpha(color) * factor), 255), Color.red(color), Color.green(color), Color.blue(color));
     }
 
+    /**
+     * Compares by identity, use {@link ArrayIndex} for repeated lookups on the same array
+     */
     public static <T> int indexOf(T[] items, T item) {
         for (int i = 0; i < items.length; i++)
             if (items[i] == item)
@@ -345,7 +478,12 @@ public final class CommonUtils {
         return -1;
     }
 
+    /**
+     * @return the position of the item in the iteration order, the set is only iterated if it contains it
+     */
     public static <T> int indexOf(Set<T> items, T item) {
+        if (!items.contains(item)) return -1;
+
         Iterator<T> iterator = items.iterator();
         int pos = 0;
         while (iterator.hasNext()) {
@@ -358,60 +496,132 @@ public final class CommonUtils {
         return -1;
     }
 
+    /**
+     * Sets the size of the buffer used by {@link #copy(InputStream, OutputStream)}, borrowed from {@link BufferPool#get()}
+     */
+    public static void setCopyBufferSize(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Invalid buffer size: " + size);
+        copyBufferSize = size;
+    }
+
     public static void copy(InputStream in, OutputStream out) throws IOException {
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
-        in.close();
-        out.close();
+        copy(in, out, -1, null, null);
+    }
+
+    /**
+     * Copies everything and closes both streams
+     *
+     * @param total the expected number of bytes, only passed to the listener
+     * @return the number of bytes copied
+     */
+    public static long copy(InputStream in, OutputStream out, long total, @Nullable CopyListener listener, @Nullable CancellationToken token) throws IOException {
+        byte[] buf = BufferPool.get().acquire(copyBufferSize);
+        try {
+            long copied = 0;
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                if (token != null && token.isCancelled()) throw new InterruptedIOException("Copy cancelled");
+
+                out.write(buf, 0, len);
+                copied += len;
+                if (listener != null) listener.onProgress(copied, total);
+            }
+
+            return copied;
+        } finally {
+            BufferPool.get().release(buf);
+            in.close();
+            out.close();
+        }
     }
 
     public static void copyFile(File src, File dst) throws IOException {
-        copy(new FileInputStream(src), new FileOutputStream(dst));
+        copyFile(src, dst, null, null);
+    }
+
+    /**
+     * Copies the file through {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, the partial destination is deleted if the copy is cancelled or fails
+     */
+    public static void copyFile(File src, File dst, @Nullable CopyListener listener, @Nullable CancellationToken token) throws IOException {
+        boolean partial = false;
+        try {
+            try (FileInputStream in = new FileInputStream(src);
+                 FileOutputStream out = new FileOutputStream(dst)) {
+                partial = true;
+                FileChannel source = in.getChannel();
+                FileChannel dest = out.getChannel();
+
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    if (token != null && token.isCancelled())
+                        throw new InterruptedIOException("Copy cancelled");
+
+                    long transferred = source.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), dest);
+                    if (transferred <= 0) break;
+                    position += transferred;
+                    if (listener != null) listener.onProgress(position, size);
+                }
+            }
+
+            partial = false;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            if (partial) dst.delete();
+        }
     }
 
     @NonNull
     public static String timeFormatter(long sec) {
-        int day = (int) TimeUnit.SECONDS.toDays(sec);
-        long hours = TimeUnit.SECONDS.toHours(sec) - TimeUnit.DAYS.toHours(day);
-        long minute = TimeUnit.SECONDS.toMinutes(sec) - TimeUnit.HOURS.toMinutes(TimeUnit.SECONDS.toHours(sec));
-        long second = TimeUnit.SECONDS.toSeconds(sec) - TimeUnit.MINUTES.toSeconds(TimeUnit.SECONDS.toMinutes(sec));
+        return timeFormatter(new StringBuilder(16), sec).toString();
+    }
+
+    /**
+     * Same as {@link #timeFormatter(long)}, but appends to the given builder without allocating
+     */
+    @NonNull
+    public static StringBuilder timeFormatter(@NonNull StringBuilder out, long sec) {
+        if (sec <= 0 || sec / 86400 > 1000) return out.append('∞');
 
+        long day = sec / 86400;
+        long hours = (sec / 3600) % 24;
+        long minute = (sec / 60) % 60;
+        long second = sec % 60;
+
+        char zero = FormatSymbols.get().zero;
         if (day > 0) {
-            if (day > 1000) {
-                return "∞";
-            } else {
-                return String.format(Locale.getDefault(), "%02d", day) + "d " + String.format(Locale.getDefault(), "%02d", hours) + "h " + String.format(Locale.getDefault(), "%02d", minute) + "m " + String.format(Locale.getDefault(), "%02d", second) + "s";
-            }
-        } else {
-            if (hours > 0) {
-                return String.format(Locale.getDefault(), "%02d", hours) + "h " + String.format(Locale.getDefault(), "%02d", minute) + "m " + String.format(Locale.getDefault(), "%02d", second) + "s";
-            } else {
-                if (minute > 0) {
-                    return String.format(Locale.getDefault(), "%02d", minute) + "m " + String.format(Locale.getDefault(), "%02d", second) + "s";
-                } else {
-                    if (second > 0) {
-                        return String.format(Locale.getDefault(), "%02d", second) + "s";
-                    } else {
-                        return "∞";
-                    }
-                }
-            }
+            appendDigits(out, day, 2, zero);
+            out.append("d ");
         }
+
+        if (day > 0 || hours > 0) {
+            appendDigits(out, hours, 2, zero);
+            out.append("h ");
+        }
+
+        if (day > 0 || hours > 0 || minute > 0) {
+            appendDigits(out, minute, 2, zero);
+            out.append("m ");
+        }
+
+        appendDigits(out, second, 2, zero);
+        return out.append('s');
     }
 
+    /**
+     * @return a new formatter, use {@link DateFormatters#get(String)} with {@link #VERBAL_DATE_PATTERN} to share one
+     */
     @NonNull
     public static SimpleDateFormat getVerbalDateFormatter() {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd MMM", Locale.getDefault());
-        sdf.setTimeZone(TimeZone.getDefault());
-        return sdf;
+        return (SimpleDateFormat) DateFormatters.get(VERBAL_DATE_PATTERN).clone();
     }
 
+    /**
+     * @return a new formatter, use {@link DateFormatters#get(String)} with {@link #FULL_DATE_PATTERN} to share one
+     */
     @NonNull
     public static SimpleDateFormat getFullDateFormatter() {
-        SimpleDateFormat sdf = new SimpleDateFormat("hh:mm:ss dd/MM/yyyy", Locale.getDefault());
-        sdf.setTimeZone(TimeZone.getDefault());
-        return sdf;
+        return (SimpleDateFormat) DateFormatters.get(FULL_DATE_PATTERN).clone();
     }
 
     public static boolean isDebug() {
@@ -453,6 +663,9 @@ public final class CommonUtils {
         ((RecyclerView.LayoutParams) holder.itemView.getLayoutParams()).bottomMargin = holder.getLayoutPosition() == items - 1 ? (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 8, context.getResources().getDisplayMetrics()) : 0;
     }
 
+    /**
+     * Compares by identity, use {@link ArrayIndex} for repeated lookups on the same array
+     */
     public static <T> boolean contains(T[] elements, T element) {
         for (T element1 : elements)
             if (element1 == element) return true;
@@ -492,32 +705,40 @@ public final class CommonUtils {
 
     @NonNull
     public static <T, P> ArrayList<T> toTList(JSONArray array, Class<T> tClass, P parent) throws JSONException {
-        ArrayList<T> items = new ArrayList<>();
+        if (array.length() == 0) return new ArrayList<>();
 
-        try {
-            for (int i = 0; i < array.length(); i++) {
-                Constructor<T> constructor;
-                if (parent != null)
-                    constructor = tClass.getDeclaredConstructor(parent.getClass(), JSONObject.class);
-                else constructor = tClass.getConstructor(JSONObject.class);
-
-                T instance;
-                if (parent != null)
-                    instance = constructor.newInstance(parent, array.getJSONObject(i));
-                else instance = constructor.newInstance(array.getJSONObject(i));
-                items.add(instance);
-            }
+        JsonFactory<T> factory = JsonFactories.get(tClass, parent == null ? null : parent.getClass());
 
-        } catch (InvocationTargetException ex) {
-            if (ex.getCause() instanceof JSONException) throw (JSONException) ex.getCause();
-            throw new RuntimeException(ex);
-        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException ex) {
-            throw new RuntimeException(ex);
-        }
+        ArrayList<T> items = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++)
+            items.add(factory.create(array.getJSONObject(i), parent));
 
         return items;
     }
 
+    /**
+     * Like {@link #toTList(JSONArray, Class, Object)}, but large arrays are split across a fork-join pool.
+     * The order is preserved, the constructor (or the registered {@link JsonFactory}) must be thread-safe.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public static <T, P> ArrayList<T> toTListParallel(JSONArray array, Class<T> tClass, P parent) throws JSONException {
+        if (array.length() < PARALLEL_THRESHOLD) return toTList(array, tClass, parent);
+
+        JsonFactory<T> factory = JsonFactories.get(tClass, parent == null ? null : parent.getClass());
+        Object[] results = new Object[array.length()];
+        ParallelMapTask task = new ParallelMapTask(array, factory, parent, results, 0, results.length, new AtomicReference<JSONException>());
+        MappingPool.POOL.invoke(task);
+        if (task.error.get() != null) throw task.error.get();
+
+        return new ArrayList<>((List<T>) (List<?>) Arrays.asList(results));
+    }
+
+    @NonNull
+    public static <T> ArrayList<T> toTListParallel(JSONArray array, Class<T> tClass) throws JSONException {
+        return toTListParallel(array, tClass, null);
+    }
+
     public static void handleCollapseClick(ImageButton button, View target) {
         handleCollapseClick(button, target, null);
     }
@@ -533,15 +754,11 @@ public final class CommonUtils {
         if (jsonArray == null) return null;
 
         T[] array = (T[]) Array.newInstance(tClass, jsonArray.length());
-        try {
-            for (int i = 0; i < jsonArray.length(); i++)
-                array[i] = tClass.getConstructor(JSONObject.class).newInstance(jsonArray.getJSONObject(i));
-        } catch (InvocationTargetException ex) {
-            if (ex.getCause() instanceof JSONException) throw (JSONException) ex.getCause();
-            throw new RuntimeException(ex);
-        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException ex) {
-            throw new RuntimeException(ex);
-        }
+        if (array.length == 0) return array;
+
+        JsonFactory<T> factory = JsonFactories.get(tClass, null);
+        for (int i = 0; i < jsonArray.length(); i++)
+            array[i] = factory.create(jsonArray.getJSONObject(i), null);
 
         return array;
     }
@@ -554,6 +771,118 @@ public final class CommonUtils {
         return array;
     }
 
+    /**
+     * Streaming version of {@link #toStringArray(JSONArray)}, the stream is closed
+     */
+    public static String[] toStringArray(Reader in) throws IOException {
+        List<String> list = toStringsList(in, false);
+        return list.toArray(new String[list.size()]);
+    }
+
+    public static String[] toStringArray(InputStream in) throws IOException {
+        return toStringArray(new InputStreamReader(in, "UTF-8"));
+    }
+
+    /**
+     * Streaming version of {@link #toTList(JSONArray, Class)}, the stream is closed
+     */
+    @NonNull
+    public static <T> ArrayList<T> toTList(Reader in, Class<T> tClass) throws IOException, JSONException {
+        return toTList(in, tClass, null);
+    }
+
+    /**
+     * Streaming version of {@link #toTList(JSONArray, Class, Object)}, only one element at a time is kept as a {@link JSONObject}. The stream is closed.
+     */
+    @NonNull
+    public static <T, P> ArrayList<T> toTList(Reader in, Class<T> tClass, P parent) throws IOException, JSONException {
+        JsonFactory<T> factory = null;
+        ArrayList<T> items = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (factory == null) factory = JsonFactories.get(tClass, parent == null ? null : parent.getClass());
+                items.add(factory.create(readJSONObject(reader), parent));
+            }
+
+            reader.endArray();
+        }
+
+        return items;
+    }
+
+    @NonNull
+    public static <T> ArrayList<T> toTList(InputStream in, Class<T> tClass) throws IOException, JSONException {
+        return toTList(in, tClass, null);
+    }
+
+    /**
+     * Reads the stream as UTF-8, see {@link #toTList(Reader, Class, Object)}
+     */
+    @NonNull
+    public static <T, P> ArrayList<T> toTList(InputStream in, Class<T> tClass, P parent) throws IOException, JSONException {
+        return toTList(new InputStreamReader(in, "UTF-8"), tClass, parent);
+    }
+
+    @NonNull
+    private static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return "null";
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                return reader.nextString();
+        }
+    }
+
+    @NonNull
+    private static JSONObject readJSONObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject obj = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) obj.put(reader.nextName(), readJSONValue(reader));
+        reader.endObject();
+        return obj;
+    }
+
+    @NonNull
+    private static Object readJSONValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readJSONObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) array.put(readJSONValue(reader));
+                reader.endArray();
+                return array;
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    @NonNull
+    private static Number parseNumber(String str) {
+        if (str.indexOf('.') == -1 && str.indexOf('e') == -1 && str.indexOf('E') == -1) {
+            try {
+                long val = Long.parseLong(str);
+                if (val >= Integer.MIN_VALUE && val <= Integer.MAX_VALUE) return (int) val;
+                else return val;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        return Double.parseDouble(str);
+    }
+
     @Nullable
     public static String getStupidString(JSONObject obj, String key) throws JSONException {
         String val = obj.getString(key);
@@ -563,4 +892,70 @@ public final class CommonUtils {
     public static boolean isStupidNull(JSONObject obj, String key) throws JSONException {
         return obj.isNull(key) || Objects.equals(obj.getString(key), "null");
     }
+
+    private static class MappingPool {
+        private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static class ParallelMapTask extends RecursiveAction {
+        private final JSONArray array;
+        private final JsonFactory<?> factory;
+        private final Object parent;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final AtomicReference<JSONException> error;
+
+        ParallelMapTask(JSONArray array, JsonFactory<?> factory, Object parent, Object[] results, int from, int to, AtomicReference<JSONException> error) {
+            this.array = array;
+            this.factory = factory;
+            this.parent = parent;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.error = error;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK) {
+                try {
+                    for (int i = from; i < to && error.get() == null; i++)
+                        results[i] = factory.create(array.getJSONObject(i), parent);
+                } catch (JSONException ex) {
+                    error.compareAndSet(null, ex);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParallelMapTask(array, factory, parent, results, from, mid, error),
+                        new ParallelMapTask(array, factory, parent, results, mid, to, error));
+            }
+        }
+    }
+
+    private static class FormatSymbols {
+        private static volatile FormatSymbols current;
+        private final Locale locale;
+        private final char zero;
+        private final char grouping;
+        private final char decimal;
+
+        private FormatSymbols(@NonNull Locale locale) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            this.locale = locale;
+            this.zero = symbols.getZeroDigit();
+            this.grouping = symbols.getGroupingSeparator();
+            this.decimal = symbols.getDecimalSeparator();
+        }
+
+        @NonNull
+        static FormatSymbols get() {
+            Locale locale = Locale.getDefault();
+            FormatSymbols symbols = current;
+            if (symbols == null || !symbols.locale.equals(locale))
+                current = symbols = new FormatSymbols(locale);
+
+            return symbols;
+        }
+    }
 }
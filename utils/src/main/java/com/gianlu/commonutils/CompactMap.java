@@ -0,0 +1,105 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable map backed by a sorted key array and a parallel value array, lookups are binary searches.
+ * Meant for read-mostly data kept in memory for a long time, where a {@link java.util.HashMap} wastes space on entries and buckets.
+ */
+public final class CompactMap<V> extends AbstractMap<String, V> {
+    private final String[] keys;
+    private final Object[] values;
+    private Set<Entry<String, V>> entrySet;
+
+    private CompactMap(String[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @param keys must be sorted and are not copied
+     */
+    @NonNull
+    static <V> CompactMap<V> wrap(@NonNull String[] keys, @NonNull Object[] values) {
+        return new CompactMap<>(keys, values);
+    }
+
+    @NonNull
+    public static <V> CompactMap<V> copyOf(@NonNull Map<String, ? extends V> map) {
+        String[] keys = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(keys);
+
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) values[i] = map.get(keys[i]);
+
+        return new CompactMap<>(keys, values);
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!(key instanceof String)) return null;
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    @NonNull
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, V>>() {
+                @NonNull
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new Iterator<Entry<String, V>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < keys.length;
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Entry<String, V> next() {
+                            if (index >= keys.length) throw new NoSuchElementException();
+                            Entry<String, V> entry = new SimpleImmutableEntry<>(keys[index], (V) values[index]);
+                            index++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        return entrySet;
+    }
+}
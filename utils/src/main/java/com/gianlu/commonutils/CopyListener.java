@@ -0,0 +1,8 @@
+package com.gianlu.commonutils;
+
+public interface CopyListener {
+    /**
+     * @param total the expected number of bytes, or -1 if unknown
+     */
+    void onProgress(long copied, long total);
+}
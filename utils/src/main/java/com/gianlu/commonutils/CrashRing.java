@@ -0,0 +1,66 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size in-memory ring holding the latest log records, writers never block each other.
+ * Every slot carries the sequence number of the record it holds so that readers can detect slots being overwritten.
+ */
+final class CrashRing {
+    private static final long BUSY = -1;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong(0);
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final Logging.LogLine.Type[] types;
+    private final String[] messages;
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    CrashRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, BUSY);
+        times = new long[size];
+        types = new Logging.LogLine.Type[size];
+        messages = new String[size];
+    }
+
+    void add(long time, @NonNull Logging.LogLine.Type type, @NonNull String message) {
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & mask);
+
+        sequences.set(slot, BUSY);
+        times[slot] = time;
+        types[slot] = type;
+        messages[slot] = message;
+        sequences.lazySet(slot, seq);
+    }
+
+    /**
+     * Calls the visitor with the records still in the ring, oldest first. Records being written concurrently are skipped.
+     */
+    void forEach(@NonNull Visitor visitor) {
+        long end = next.get();
+        for (long seq = Math.max(0, end - mask - 1); seq < end; seq++) {
+            int slot = (int) (seq & mask);
+            if (sequences.get(slot) != seq) continue;
+
+            long time = times[slot];
+            Logging.LogLine.Type type = types[slot];
+            String message = messages[slot];
+            if (sequences.get(slot) != seq) continue;
+
+            visitor.visit(time, type, message);
+        }
+    }
+
+    interface Visitor {
+        void visit(long time, @NonNull Logging.LogLine.Type type, @NonNull String message);
+    }
+}
@@ -0,0 +1,78 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Per-thread cache of {@link SimpleDateFormat} keyed by pattern, locale and time zone.
+ * The returned instances are shared with the other callers on the same thread and must not be modified.
+ */
+public final class DateFormatters {
+    private static final int MAX_CACHED = 16;
+    private static final ThreadLocal<Map<Key, SimpleDateFormat>> cache = new ThreadLocal<Map<Key, SimpleDateFormat>>() {
+        @Override
+        protected Map<Key, SimpleDateFormat> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private DateFormatters() {
+    }
+
+    /**
+     * @return a formatter for the current default locale and time zone
+     */
+    @NonNull
+    public static SimpleDateFormat get(@NonNull String pattern) {
+        return get(pattern, Locale.getDefault(), TimeZone.getDefault());
+    }
+
+    @NonNull
+    public static SimpleDateFormat get(@NonNull String pattern, @NonNull Locale locale, @NonNull TimeZone timeZone) {
+        Map<Key, SimpleDateFormat> formatters = cache.get();
+        Key key = new Key(pattern, locale, timeZone.getID());
+        SimpleDateFormat formatter = formatters.get(key);
+        if (formatter == null) {
+            if (formatters.size() >= MAX_CACHED) formatters.clear();
+
+            formatter = new SimpleDateFormat(pattern, locale);
+            formatter.setTimeZone(timeZone);
+            formatters.put(key, formatter);
+        }
+
+        return formatter;
+    }
+
+    private static class Key {
+        private final String pattern;
+        private final Locale locale;
+        private final String timeZone;
+
+        Key(@NonNull String pattern, @NonNull Locale locale, @NonNull String timeZone) {
+            this.pattern = pattern;
+            this.locale = locale;
+            this.timeZone = timeZone;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return pattern.equals(key.pattern) && locale.equals(key.locale) && timeZone.equals(key.timeZone);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = pattern.hashCode();
+            result = 31 * result + locale.hashCode();
+            result = 31 * result + timeZone.hashCode();
+            return result;
+        }
+    }
+}
@@ -174,9 +174,9 @@ public class InfiniteRecyclerView extends RecyclerView {
                     SeparatorViewHolder separator = (SeparatorViewHolder) holder;
                     separator.line.setBackground(position == 0 ? null : config.separator);
                     if (config.separatorWithCount)
-                        separator.date.setText(String.format(Locale.getDefault(), "%s (%d)", CommonUtils.getVerbalDateFormatter().format(item.date), countFor(item.date)));
+                        separator.date.setText(String.format(Locale.getDefault(), "%s (%d)", DateFormatters.get(CommonUtils.VERBAL_DATE_PATTERN).format(item.date), countFor(item.date)));
                     else
-                        separator.date.setText(CommonUtils.getVerbalDateFormatter().format(item.date));
+                        separator.date.setText(DateFormatters.get(CommonUtils.VERBAL_DATE_PATTERN).format(item.date));
                 } else if (item.item != null) {
                     userBindViewHolder((VH) holder, item, position);
                 }
@@ -0,0 +1,106 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of {@link JsonFactory} used by {@link CommonUtils#toTList(org.json.JSONArray, Class)} and {@link CommonUtils#toTArray(org.json.JSONArray, Class)}.
+ * Classes without a registered factory are built through their {@code (JSONObject)} or {@code (Parent, JSONObject)} constructor, looked up once per class.
+ */
+public final class JsonFactories {
+    private static final ConcurrentMap<Class<?>, JsonFactory<?>> registered = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Key, JsonFactory<?>> constructors = new ConcurrentHashMap<>();
+
+    private JsonFactories() {
+    }
+
+    public static <T> void register(@NonNull Class<T> tClass, @NonNull JsonFactory<T> factory) {
+        registered.put(tClass, factory);
+    }
+
+    public static void unregister(@NonNull Class<?> tClass) {
+        registered.remove(tClass);
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public static <T> JsonFactory<T> get(@NonNull Class<T> tClass, @Nullable Class<?> parentClass) {
+        JsonFactory<T> factory = (JsonFactory<T>) registered.get(tClass);
+        if (factory != null) return factory;
+
+        Key key = new Key(tClass, parentClass);
+        factory = (JsonFactory<T>) constructors.get(key);
+        if (factory == null) {
+            factory = new ConstructorFactory<>(tClass, parentClass);
+            constructors.putIfAbsent(key, factory);
+        }
+
+        return factory;
+    }
+
+    private static class Key {
+        private final Class<?> tClass;
+        private final Class<?> parentClass;
+
+        Key(@NonNull Class<?> tClass, @Nullable Class<?> parentClass) {
+            this.tClass = tClass;
+            this.parentClass = parentClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return tClass == key.tClass && parentClass == key.parentClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tClass.hashCode() + Objects.hashCode(parentClass);
+        }
+    }
+
+    private static class ConstructorFactory<T> implements JsonFactory<T> {
+        private final Constructor<T> constructor;
+        private final boolean withParent;
+
+        ConstructorFactory(@NonNull Class<T> tClass, @Nullable Class<?> parentClass) {
+            try {
+                if (parentClass != null) {
+                    constructor = tClass.getDeclaredConstructor(parentClass, JSONObject.class);
+                    constructor.setAccessible(true);
+                } else {
+                    constructor = tClass.getConstructor(JSONObject.class);
+                }
+            } catch (NoSuchMethodException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            withParent = parentClass != null;
+        }
+
+        @NonNull
+        @Override
+        public T create(@NonNull JSONObject obj, @Nullable Object parent) throws JSONException {
+            try {
+                if (withParent) return constructor.newInstance(parent, obj);
+                else return constructor.newInstance(obj);
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof JSONException) throw (JSONException) ex.getCause();
+                throw new RuntimeException(ex);
+            } catch (InstantiationException | IllegalAccessException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds model objects from JSON without reflection, see {@link JsonFactories#register(Class, JsonFactory)}
+ */
+public interface JsonFactory<T> {
+    @NonNull
+    T create(@NonNull JSONObject obj, @Nullable Object parent) throws JSONException;
+}
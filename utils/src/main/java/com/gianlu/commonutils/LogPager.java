@@ -0,0 +1,13 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface LogPager extends Closeable {
+    @NonNull
+    LogReader.Page readPage(int count) throws IOException;
+
+    boolean hasMore();
+}
@@ -0,0 +1,365 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+public final class LogReader implements LogPager {
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final File file;
+    private final boolean binary;
+    private byte[] buffer;
+    private byte[] line = new byte[256];
+    private InputStream in;
+    private int bufferPos = 0;
+    private int bufferLen = 0;
+    private long offset = 0;
+    private boolean eof = false;
+    private Logging.LogLine.Type minLevel = null;
+    private String query = null;
+    private Record pending = null;
+
+    public LogReader(@NonNull File file) throws IOException {
+        this.file = file;
+        this.binary = BinaryLogFormat.isBinary(file);
+        this.in = open();
+        this.buffer = BufferPool.get().acquire(BUFFER_SIZE); // Only once the file has been opened, otherwise it would never be released
+    }
+
+    @NonNull
+    private InputStream open() throws IOException {
+        if (file.getName().endsWith(LogRotator.COMPRESSED_EXTENSION))
+            return new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+        else
+            return new FileInputStream(file);
+    }
+
+    /**
+     * @return the byte offset of the next line that will be read, in uncompressed bytes
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public boolean hasMore() {
+        return !eof || pending != null;
+    }
+
+    /**
+     * Lines below the given level will be skipped, {@code null} to read everything
+     */
+    public void setMinLevel(@Nullable Logging.LogLine.Type level) {
+        this.minLevel = level;
+    }
+
+    /**
+     * Only lines containing the given string will be returned, {@code null} to read everything
+     */
+    public void setQuery(@Nullable String query) {
+        this.query = query == null || query.isEmpty() ? null : query;
+    }
+
+    public void seek(long offset) throws IOException {
+        pending = null;
+
+        if (offset < this.offset || in == null) {
+            if (in != null) in.close();
+            in = open();
+            this.offset = 0;
+            bufferPos = bufferLen = 0;
+        }
+
+        eof = false;
+        long delta = offset - this.offset;
+        int buffered = (int) Math.min(delta, bufferLen - bufferPos);
+        bufferPos += buffered;
+        this.offset += buffered;
+        delta -= buffered;
+
+        if (delta > 0) {
+            bufferPos = bufferLen = 0;
+            while (delta > 0) {
+                long skipped = in.skip(delta);
+                if (skipped <= 0) break;
+                delta -= skipped;
+                this.offset += skipped;
+            }
+        }
+    }
+
+    /**
+     * Moves to the first record logged at or after the given time, only binary logs carry full timestamps
+     *
+     * @return whether the file supports seeking by time
+     */
+    public boolean seekTime(long time) throws IOException {
+        if (!binary) return false;
+
+        long start = 0;
+        if (!file.getName().endsWith(LogRotator.COMPRESSED_EXTENSION))
+            start = BinaryLogFormat.findOffset(BinaryLogFormat.indexFor(file), time / 60000);
+
+        seek(start);
+
+        Record record;
+        while ((record = readRecord(false)) != null) {
+            if (record.time >= time) {
+                pending = record;
+                break;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads until {@code count} log lines have been found or the end of the file is reached
+     */
+    @NonNull
+    @Override
+    public Page readPage(int count) throws IOException {
+        long start = pending != null ? pending.offset : offset;
+        List<Logging.LogLine> lines = new ArrayList<>(Math.min(count, 1024));
+
+        if (binary) {
+            Record record;
+            while (lines.size() < count && (record = nextRecord()) != null) {
+                if (record.type == null || !isEnabled(record.type) || !matchesQuery(record.message, 0))
+                    continue;
+                lines.add(new Logging.LogLine(record.type, formatTime(record.time) + " >> " + record.message));
+            }
+        } else {
+            String raw;
+            while (lines.size() < count && (raw = readLine()) != null) {
+                Logging.LogLine line = Logging.parseLine(raw);
+                if (line != null && isEnabled(line.type) && matchesQuery(line.message, messageStart(line.message)))
+                    lines.add(line);
+            }
+        }
+
+        return new Page(lines, start, offset, !hasMore());
+    }
+
+    private boolean isEnabled(@NonNull Logging.LogLine.Type type) {
+        return minLevel == null || type.ordinal() >= minLevel.ordinal();
+    }
+
+    /**
+     * Only the message is searched, not the level and time that precede it
+     */
+    private boolean matchesQuery(@NonNull String message, int from) {
+        return query == null || message.indexOf(query, from) != -1;
+    }
+
+    private static int messageStart(@NonNull String line) {
+        int separator = line.indexOf(" >> ");
+        return separator == -1 ? line.length() : separator + 4;
+    }
+
+    @NonNull
+    private String formatTime(long time) {
+        return DateFormatters.get("HH:mm:ss").format(new Date(time));
+    }
+
+    @Nullable
+    Record nextRecord() throws IOException {
+        if (pending != null) {
+            Record record = pending;
+            pending = null;
+            return record;
+        }
+
+        return readRecord(true);
+    }
+
+    /**
+     * @param filter whether records below the minimum level should be skipped without decoding them
+     */
+    @Nullable
+    private Record readRecord(boolean filter) throws IOException {
+        while (true) {
+            long start = offset;
+            int first = read();
+            if (first == -1) {
+                eof = true;
+                return null;
+            }
+
+            try {
+                long time = readVarint(first);
+                int level = read();
+                if (level == -1) throw new EOFException();
+
+                boolean hasTrace = (level & BinaryLogFormat.FLAG_TRACE) != 0;
+                level &= ~BinaryLogFormat.FLAG_TRACE;
+                Logging.LogLine.Type type = BinaryLogFormat.levelOf(level);
+
+                if (filter && (type == null || !isEnabled(type))) {
+                    skip(readLength());
+                    if (hasTrace) skip(readLength());
+                    continue;
+                }
+
+                String message = readString(readLength());
+                String trace = hasTrace ? readString(readLength()) : null;
+                return new Record(start, time, type, message, trace);
+            } catch (EOFException ex) { // Truncated record, probably still being written
+                eof = true;
+                return null;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLen) {
+            bufferLen = Math.max(0, in.read(buffer));
+            bufferPos = 0;
+            if (bufferLen == 0) return -1;
+        }
+
+        offset++;
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    private long readVarint(int first) throws IOException {
+        long value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            b = read();
+            if (b == -1 || shift > 63) throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+
+        return value;
+    }
+
+    private int readLength() throws IOException {
+        int first = read();
+        if (first == -1) throw new EOFException();
+
+        long length = readVarint(first);
+        if (length > Integer.MAX_VALUE) throw new IOException("Corrupted record at " + offset);
+        return (int) length;
+    }
+
+    private void skip(int length) throws IOException {
+        long target = offset + length;
+        seek(target);
+        if (offset != target) throw new EOFException();
+    }
+
+    @NonNull
+    private String readString(int length) throws IOException {
+        if (line.length < length) line = new byte[length];
+
+        int read = 0;
+        while (read < length) {
+            if (bufferPos == bufferLen) {
+                bufferLen = Math.max(0, in.read(buffer));
+                bufferPos = 0;
+                if (bufferLen == 0) throw new EOFException();
+            }
+
+            int chunk = Math.min(length - read, bufferLen - bufferPos);
+            System.arraycopy(buffer, bufferPos, line, read, chunk);
+            bufferPos += chunk;
+            offset += chunk;
+            read += chunk;
+        }
+
+        return new String(line, 0, length, UTF_8);
+    }
+
+    @Nullable
+    private String readLine() throws IOException {
+        if (eof) return null;
+
+        int len = 0;
+        while (true) {
+            if (bufferPos == bufferLen) {
+                bufferLen = in.read(buffer);
+                bufferPos = 0;
+
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    eof = true;
+                    return len == 0 ? null : new String(line, 0, len, UTF_8);
+                }
+            }
+
+            int start = bufferPos;
+            while (bufferPos < bufferLen && buffer[bufferPos] != '\n') bufferPos++;
+
+            int chunk = bufferPos - start;
+            if (len + chunk > line.length) line = Arrays.copyOf(line, Math.max(len + chunk, line.length * 2));
+            System.arraycopy(buffer, start, line, len, chunk);
+            len += chunk;
+            offset += chunk;
+
+            if (bufferPos < bufferLen) {
+                bufferPos++;
+                offset++;
+                if (len > 0 && line[len - 1] == '\r') len--;
+                return new String(line, 0, len, UTF_8);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+
+        if (buffer != null) {
+            BufferPool.get().release(buffer);
+            buffer = null;
+        }
+    }
+
+    static class Record {
+        final long offset;
+        final long time;
+        final Logging.LogLine.Type type;
+        final String message;
+        final String trace;
+
+        Record(long offset, long time, @Nullable Logging.LogLine.Type type, @NonNull String message, @Nullable String trace) {
+            this.offset = offset;
+            this.time = time;
+            this.type = type;
+            this.message = message;
+            this.trace = trace;
+        }
+    }
+
+    public static class Page {
+        public final List<Logging.LogLine> lines;
+        public final long startOffset;
+        public final long endOffset;
+        public final boolean last;
+
+        Page(List<Logging.LogLine> lines, long startOffset, long endOffset, boolean last) {
+            this.lines = lines;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.last = last;
+        }
+    }
+}
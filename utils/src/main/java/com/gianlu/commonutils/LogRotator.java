@@ -0,0 +1,176 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+final class LogRotator {
+    static final String COMPRESSED_EXTENSION = ".gz";
+    private static volatile long maxFileSize = 512 * 1024;
+    private static volatile long maxTotalSize = 8 * 1024 * 1024;
+    private final File dir;
+    private final File logFile;
+    private final File secretLogFile;
+    private final ExecutorService executor;
+
+    LogRotator(@NonNull File logFile, @NonNull File secretLogFile) {
+        this.dir = logFile.getParentFile();
+        this.logFile = logFile;
+        this.secretLogFile = secretLogFile;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "Logging-rotator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static void setLimits(long maxFileSize, long maxTotalSize) {
+        if (maxFileSize <= 0 || maxTotalSize < maxFileSize)
+            throw new IllegalArgumentException("Invalid limits: " + maxFileSize + ", " + maxTotalSize);
+
+        LogRotator.maxFileSize = maxFileSize;
+        LogRotator.maxTotalSize = maxTotalSize;
+    }
+
+    static boolean isLogFileName(@NonNull String name, boolean secret) {
+        name = name.toLowerCase();
+        if (name.endsWith(COMPRESSED_EXTENSION))
+            name = name.substring(0, name.length() - COMPRESSED_EXTENSION.length());
+        if (name.endsWith(BinaryLogFormat.EXTENSION))
+            name = name.substring(0, name.length() - BinaryLogFormat.EXTENSION.length());
+
+        return name.endsWith(secret ? ".secret" : ".log");
+    }
+
+    @NonNull
+    static List<Logging.LogFile> list(@NonNull File dir, final boolean secret) {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File file, String name) {
+                return isLogFileName(name, secret);
+            }
+        });
+
+        List<Logging.LogFile> logFiles = new ArrayList<>();
+        if (files == null) return logFiles;
+
+        for (File file : files) {
+            try {
+                logFiles.add(new Logging.LogFile(file));
+            } catch (ParseException ex) {
+                if (Logging.DEBUG) ex.printStackTrace();
+            }
+        }
+
+        Collections.sort(logFiles, new Logging.LogFileComparator());
+        return logFiles;
+    }
+
+    boolean shouldRoll(long size) {
+        return size >= maxFileSize;
+    }
+
+    /**
+     * Moves the active file aside as a new segment and compresses it in the background
+     */
+    void roll(@NonNull File active) {
+        String name = active.getName();
+        int dot = name.indexOf('.');
+        if (dot == -1) return;
+
+        String date = name.substring(0, dot);
+        String extension = name.substring(dot);
+
+        int segment = 1;
+        for (Logging.LogFile file : list(dir, isLogFileName(name, true)))
+            if (file.toDateString().equals(date) && file.segment >= segment)
+                segment = file.segment + 1;
+
+        final File rolled = new File(dir, date + "." + segment + extension);
+        if (!active.renameTo(rolled)) return;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compress(rolled);
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Compresses segments left behind uncompressed and enforces the size limit
+     */
+    void maintain() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (boolean secret : new boolean[]{false, true})
+                    for (Logging.LogFile file : list(dir, secret))
+                        if (file.segment > 0 && !file.compressed) compress(file);
+
+                trim();
+            }
+        });
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void compress(@NonNull File file) {
+        if (!file.exists()) return;
+
+        File tmp = new File(dir, file.getName() + COMPRESSED_EXTENSION + ".tmp");
+        byte[] buffer = BufferPool.get().acquire(8192);
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp))) {
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        } catch (IOException ex) {
+            if (Logging.DEBUG) ex.printStackTrace();
+            tmp.delete();
+            return;
+        } finally {
+            BufferPool.get().release(buffer);
+        }
+
+        if (tmp.renameTo(new File(dir, file.getName() + COMPRESSED_EXTENSION))) file.delete();
+        else tmp.delete();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void trim() {
+        List<Logging.LogFile> files = new ArrayList<>();
+        files.addAll(list(dir, false));
+        files.addAll(list(dir, true));
+
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= maxTotalSize) return;
+
+        Collections.sort(files, Collections.reverseOrder(new Logging.LogFileComparator()));
+        for (Logging.LogFile file : files) {
+            if (total <= maxTotalSize) break;
+            if (file.equals(logFile) || file.equals(secretLogFile)) continue;
+            if (file.segment > 0 && !file.compressed) continue; // Still waiting to be compressed
+
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+}
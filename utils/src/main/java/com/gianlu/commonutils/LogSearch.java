@@ -0,0 +1,185 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans a memory mapped plain text log for lines with a given level and/or containing a given string
+ */
+public final class LogSearch implements LogPager {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] SEPARATOR = " >> ".getBytes(UTF_8);
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int limit;
+    private final byte[] query;
+    private final byte[][] prefixes;
+    private byte[] line = new byte[256];
+    private int position = 0;
+    private int lineStart = -1;
+    private int lineEnd = -1;
+
+    private LogSearch(@NonNull File file, @Nullable Logging.LogLine.Type minLevel, @Nullable String query) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.limit = (int) Math.min(this.file.length(), Integer.MAX_VALUE);
+        this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, limit);
+        this.query = query == null || query.isEmpty() ? null : query.getBytes(UTF_8);
+
+        List<byte[]> prefixes = new ArrayList<>();
+        for (Logging.LogLine.Type type : Logging.LogLine.Type.values())
+            if (minLevel == null || type.ordinal() >= minLevel.ordinal())
+                prefixes.add(("--" + type.name() + "--").getBytes(UTF_8));
+
+        this.prefixes = prefixes.toArray(new byte[0][]);
+    }
+
+    /**
+     * Memory maps plain text logs, compressed or binary ones are filtered while reading them sequentially
+     */
+    @NonNull
+    public static LogPager open(@NonNull Logging.LogFile file, @Nullable Logging.LogLine.Type minLevel, @Nullable String query) throws IOException {
+        if (!file.compressed && !file.binary) {
+            return new LogSearch(file, minLevel, query);
+        } else {
+            LogReader reader = new LogReader(file);
+            reader.setMinLevel(minLevel);
+            reader.setQuery(query);
+            return reader;
+        }
+    }
+
+    /**
+     * @return the offset of the next matching line or -1 if there are no more matches
+     */
+    public long nextOffset() {
+        if (!findNext()) return -1;
+        position = lineEnd;
+        return lineStart;
+    }
+
+    @Override
+    public boolean hasMore() {
+        return position < limit;
+    }
+
+    @NonNull
+    @Override
+    public LogReader.Page readPage(int count) {
+        long start = position;
+        List<Logging.LogLine> lines = new ArrayList<>(Math.min(count, 1024));
+        while (lines.size() < count && findNext()) {
+            Logging.LogLine line = Logging.parseLine(decodeLine());
+            if (line != null) lines.add(line);
+            position = lineEnd;
+        }
+
+        return new LogReader.Page(lines, start, position, !hasMore());
+    }
+
+    private boolean findNext() {
+        while (position < limit) {
+            if (query == null) {
+                lineStart = position;
+                lineEnd = endOfLine(position);
+            } else {
+                int match = indexOf(query, position);
+                if (match == -1) {
+                    position = limit;
+                    return false;
+                }
+
+                lineStart = startOfLine(match);
+                int messageStart = messageStart(lineStart);
+                if (match < messageStart) { // Only the message is searched, as for compressed and binary logs
+                    position = Math.max(messageStart, match + 1);
+                    continue;
+                }
+
+                lineEnd = endOfLine(match);
+            }
+
+            if (matchesLevel(lineStart)) return true;
+            position = lineEnd;
+        }
+
+        return false;
+    }
+
+    private boolean matchesLevel(int start) {
+        for (byte[] prefix : prefixes)
+            if (regionMatches(prefix, start))
+                return true;
+
+        return false;
+    }
+
+    private boolean regionMatches(byte[] bytes, int at) {
+        if (at + bytes.length > limit) return false;
+
+        for (int i = 0; i < bytes.length; i++)
+            if (buffer.get(at + i) != bytes[i])
+                return false;
+
+        return true;
+    }
+
+    private int indexOf(byte[] bytes, int from) {
+        byte first = bytes[0];
+        int last = limit - bytes.length;
+        for (int i = from; i <= last; i++)
+            if (buffer.get(i) == first && regionMatches(bytes, i))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * @return the position right after the separator, or the end of the line if there's none
+     */
+    private int messageStart(int start) {
+        int end = endOfLine(start);
+        for (int i = start; i + SEPARATOR.length <= end; i++)
+            if (regionMatches(SEPARATOR, i))
+                return i + SEPARATOR.length;
+
+        return end;
+    }
+
+    private int startOfLine(int at) {
+        while (at > 0 && buffer.get(at - 1) != '\n') at--;
+        return at;
+    }
+
+    /**
+     * @return the position right after the line terminator
+     */
+    private int endOfLine(int at) {
+        while (at < limit && buffer.get(at) != '\n') at++;
+        return Math.min(at + 1, limit);
+    }
+
+    @NonNull
+    private String decodeLine() {
+        int len = lineEnd - lineStart;
+        if (len > 0 && buffer.get(lineEnd - 1) == '\n') len--;
+        if (len > 0 && buffer.get(lineStart + len - 1) == '\r') len--;
+
+        if (line.length < len) line = new byte[len];
+        for (int i = 0; i < len; i++) line[i] = buffer.get(lineStart + i);
+        return new String(line, 0, len, UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,436 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class LogWriter extends Thread {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int FLUSH_SIZE = 8 * 1024;
+    private static final long FLUSH_INTERVAL = 1000;
+    private static final int CHARS_SIZE = 512;
+    private static final int MAX_RETAINED_CHARS_SIZE = 64 * 1024;
+    private final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger dropped = new AtomicInteger(0);
+    private final Target log;
+    private final Target secret;
+    private final CharsetEncoder encoder;
+    private final TimeZone timeZone;
+    private final boolean binary;
+    private final TraceDeduplicator traces = new TraceDeduplicator();
+    private final TraceDeduplicator.Listener collapsedListener = new TraceDeduplicator.Listener() {
+        @Override
+        public void onCollapsed(@NonNull TraceDeduplicator.Trace trace) {
+            appendCollapsed(System.currentTimeMillis(), trace);
+        }
+    };
+    private CharBuffer chars = CharBuffer.allocate(CHARS_SIZE);
+    private ByteBuffer scratch = ByteBuffer.allocate(CHARS_SIZE * 3);
+    private long deadline = 0;
+    private volatile boolean closed = false;
+
+    LogWriter(@NonNull File logFile, @NonNull File secretLogFile, @NonNull LogRotator rotator, boolean binary) {
+        super("Logging-writer");
+        setDaemon(true);
+
+        this.binary = binary;
+        this.log = new Target(logFile, rotator, binary);
+        this.secret = new Target(secretLogFile, rotator, binary);
+        this.timeZone = TimeZone.getDefault();
+        this.encoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    void log(@NonNull Logging.LogLine.Type type, String message) {
+        offer(new Entry(System.currentTimeMillis(), message, type, null, null));
+    }
+
+    void secret(@NonNull Throwable ex) {
+        offer(new Entry(System.currentTimeMillis(), null, Logging.LogLine.Type.ERROR, ex, null));
+    }
+
+    private void offer(Entry entry) {
+        if (closed || !queue.offer(entry)) dropped.incrementAndGet();
+    }
+
+    /**
+     * Blocks until everything queued before this call has been written, or the timeout expires.
+     */
+    boolean flush(long timeout) {
+        if (closed || !isAlive()) return false;
+
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            long start = System.currentTimeMillis();
+            if (!queue.offer(new Entry(0, null, null, null, latch), timeout, TimeUnit.MILLISECONDS))
+                return false;
+
+            return latch.await(Math.max(0, timeout - (System.currentTimeMillis() - start)), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void close() {
+        flush(FLUSH_INTERVAL);
+        closed = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long wakeUp = hasPending() ? deadline : -1;
+            long expiry = traces.nextExpiry();
+            if (expiry != -1 && (wakeUp == -1 || expiry < wakeUp)) wakeUp = expiry;
+
+            Entry entry;
+            try {
+                if (wakeUp != -1)
+                    entry = queue.poll(Math.max(0, wakeUp - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                else if (closed)
+                    break;
+                else
+                    entry = queue.take();
+            } catch (InterruptedException ex) {
+                if (closed) break;
+                else continue;
+            }
+
+            if (entry == null) {
+                traces.expire(System.currentTimeMillis(), collapsedListener);
+                if (System.currentTimeMillis() >= deadline) writePending();
+                continue;
+            }
+
+            if (entry.latch != null) {
+                traces.expireAll(collapsedListener);
+                writePending();
+                entry.latch.countDown();
+                continue;
+            }
+
+            int lost = dropped.getAndSet(0);
+            if (lost > 0) append(System.currentTimeMillis(), lost + " log lines have been dropped", Logging.LogLine.Type.WARNING, null);
+            try {
+                append(entry.time, entry.message, entry.type, entry.ex);
+            } catch (RuntimeException ex) { // The throwable being logged may fail to print itself, nothing is written before that
+                String failed = entry.ex != null ? entry.ex.getClass().getName() : "message";
+                append(entry.time, "Failed logging " + failed + ": " + ex.getClass().getName(), Logging.LogLine.Type.ERROR, null);
+            }
+
+            if (log.buffer.position() >= FLUSH_SIZE || secret.buffer.position() >= FLUSH_SIZE)
+                writePending();
+
+            log.rollIfNeeded();
+            secret.rollIfNeeded();
+        }
+
+        traces.expireAll(collapsedListener);
+        writePending();
+        log.close();
+        secret.close();
+    }
+
+    private boolean hasPending() {
+        return log.buffer.position() > 0 || secret.buffer.position() > 0;
+    }
+
+    private void writePending() {
+        log.write();
+        secret.write();
+    }
+
+    private void append(long time, String message, Logging.LogLine.Type type, @Nullable Throwable ex) {
+        if (!hasPending()) deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+
+        if (ex != null) {
+            TraceDeduplicator.Trace trace = traces.register(ex, time, collapsedListener);
+            if (trace.repeats > 0) return;
+
+            if (binary) {
+                writeRecord(secret, time, Logging.LogLine.Type.ERROR, "#" + trace.id + " " + ex.toString(), Logging.getStackTrace(ex));
+            } else {
+                formatSecret(time, trace.id, ex);
+                encodeTo(secret);
+            }
+        } else {
+            if (binary) {
+                writeRecord(log, time, type, message, null);
+            } else {
+                formatLine(time, message, type);
+                encodeTo(log);
+            }
+        }
+    }
+
+    private void appendCollapsed(long time, @NonNull TraceDeduplicator.Trace trace) {
+        if (!hasPending()) deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+
+        if (binary) {
+            writeRecord(secret, time, Logging.LogLine.Type.ERROR, "same as #" + trace.id + ", x" + trace.repeats, null);
+        } else {
+            prepareChars(48);
+            putTime(time);
+            chars.put(" >> same as #").put(String.valueOf(trace.id)).put(", x").put(String.valueOf(trace.repeats)).put("\n\n");
+            encodeTo(secret);
+        }
+    }
+
+    private void writeRecord(@NonNull Target target, long time, @NonNull Logging.LogLine.Type type, @NonNull String message, @Nullable String trace) {
+        target.mark(time);
+        target.ensureRemaining(BinaryLogFormat.MAX_VARINT_SIZE + 1);
+        BinaryLogFormat.putVarint(target.buffer, time);
+        target.buffer.put((byte) (BinaryLogFormat.levelCode(type) | (trace == null ? 0 : BinaryLogFormat.FLAG_TRACE)));
+
+        writeString(target, message);
+        if (trace != null) writeString(target, trace);
+    }
+
+    private void writeString(@NonNull Target target, @NonNull String str) {
+        prepareChars(str.length());
+        chars.put(str).flip();
+
+        int maxBytes = str.length() * 3;
+        if (scratch.capacity() < maxBytes) scratch = ByteBuffer.allocate(maxBytes);
+        else scratch.clear();
+
+        encoder.reset();
+        encoder.encode(chars, scratch, true);
+        encoder.flush(scratch);
+        scratch.flip();
+
+        target.ensureRemaining(BinaryLogFormat.MAX_VARINT_SIZE);
+        BinaryLogFormat.putVarint(target.buffer, scratch.remaining());
+        target.put(scratch);
+
+        if (chars.capacity() > MAX_RETAINED_CHARS_SIZE) chars = CharBuffer.allocate(CHARS_SIZE);
+        if (scratch.capacity() > MAX_RETAINED_CHARS_SIZE * 3) scratch = ByteBuffer.allocate(CHARS_SIZE * 3);
+    }
+
+    private void formatLine(long time, @NonNull String message, @NonNull Logging.LogLine.Type type) {
+        String level = type.name();
+        prepareChars(level.length() + 16 + message.length() + 1);
+
+        chars.put("--").put(level).put("--");
+        putTime(time);
+        chars.put(" >> ");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            chars.put(c == '\n' ? ' ' : c);
+        }
+        chars.put('\n');
+    }
+
+    private void formatSecret(long time, int id, @NonNull Throwable ex) {
+        String trace = Logging.getStackTrace(ex);
+        prepareChars(24 + trace.length() + 2);
+
+        putTime(time);
+        chars.put(" >> #").put(String.valueOf(id)).put(' ').put(trace).put("\n\n");
+    }
+
+    private void prepareChars(int length) {
+        if (chars.capacity() < length) chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        else chars.clear();
+    }
+
+    private void putTime(long time) {
+        int seconds = (int) (((time + timeZone.getOffset(time)) / 1000) % 86400);
+        if (seconds < 0) seconds += 86400;
+
+        putTwoDigits(seconds / 3600);
+        chars.put(':');
+        putTwoDigits((seconds / 60) % 60);
+        chars.put(':');
+        putTwoDigits(seconds % 60);
+    }
+
+    private void putTwoDigits(int value) {
+        chars.put((char) ('0' + value / 10)).put((char) ('0' + value % 10));
+    }
+
+    private void encodeTo(@NonNull Target target) {
+        chars.flip();
+        encoder.reset();
+
+        try {
+            while (true) {
+                CoderResult result = encoder.encode(chars, target.buffer, true);
+                if (result.isOverflow()) {
+                    if (target.buffer.position() == 0) break;
+                    target.write();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    break;
+                }
+            }
+
+            while (encoder.flush(target.buffer).isOverflow()) target.write();
+        } catch (CharacterCodingException ex) {
+            if (Logging.DEBUG) ex.printStackTrace();
+        }
+
+        if (chars.capacity() > MAX_RETAINED_CHARS_SIZE) chars = CharBuffer.allocate(CHARS_SIZE);
+    }
+
+    private static class Entry {
+        final long time;
+        final String message;
+        final Logging.LogLine.Type type;
+        final Throwable ex;
+        final CountDownLatch latch;
+
+        Entry(long time, String message, Logging.LogLine.Type type, @Nullable Throwable ex, @Nullable CountDownLatch latch) {
+            this.time = time;
+            this.message = message;
+            this.type = type;
+            this.ex = ex;
+            this.latch = latch;
+        }
+    }
+
+    private static class Target {
+        private final File file;
+        private final LogRotator rotator;
+        private final boolean binary;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer index = ByteBuffer.allocate(BinaryLogFormat.INDEX_ENTRY_SIZE * 64);
+        private FileChannel channel;
+        private FileChannel indexChannel;
+        private long size;
+        private long lastMinute = -1;
+
+        Target(File file, LogRotator rotator, boolean binary) {
+            this.file = file;
+            this.rotator = rotator;
+            this.binary = binary;
+        }
+
+        private boolean open() {
+            if (channel != null) return true;
+
+            try {
+                channel = new FileOutputStream(file, true).getChannel();
+                size = channel.size();
+                if (binary)
+                    indexChannel = new FileOutputStream(BinaryLogFormat.indexFor(file), true).getChannel();
+                return true;
+            } catch (IOException ex) {
+                if (Logging.DEBUG) ex.printStackTrace();
+                close();
+                return false;
+            }
+        }
+
+        /**
+         * Indexes the record about to be appended if it's the first of its minute
+         */
+        void mark(long time) {
+            long minute = time / 60000;
+            if (!binary || minute == lastMinute || !open()) return;
+
+            if (index.remaining() < BinaryLogFormat.INDEX_ENTRY_SIZE) write();
+            index.putInt((int) minute).putLong(size + buffer.position());
+            lastMinute = minute;
+        }
+
+        void ensureRemaining(int bytes) {
+            if (buffer.remaining() < bytes) write();
+        }
+
+        void put(ByteBuffer src) {
+            if (src.remaining() > buffer.remaining()) write();
+
+            if (src.remaining() > buffer.capacity()) {
+                int length = src.remaining();
+                if (open()) writeFully(channel, src);
+                size += length;
+                src.position(src.limit());
+            } else {
+                buffer.put(src);
+            }
+        }
+
+        void write() {
+            if (buffer.position() == 0 && index.position() == 0) return;
+
+            reopenIfDeleted();
+            buffer.flip();
+            index.flip();
+
+            if (open()) {
+                size += buffer.remaining();
+                writeFully(channel, buffer);
+                if (indexChannel != null) writeFully(indexChannel, index);
+            }
+
+            buffer.clear();
+            index.clear();
+        }
+
+        /**
+         * The file may have been deleted while open, see {@link Logging#deleteLogs(android.content.Context)}
+         */
+        private void reopenIfDeleted() {
+            if (channel == null || file.exists()) return;
+
+            close();
+            for (int i = 0; i < index.position(); i += BinaryLogFormat.INDEX_ENTRY_SIZE)
+                index.putLong(i + 4, index.getLong(i + 4) - size);
+            size = 0;
+        }
+
+        private void writeFully(FileChannel channel, ByteBuffer src) {
+            try {
+                while (src.hasRemaining()) channel.write(src);
+            } catch (IOException ex) {
+                if (Logging.DEBUG) ex.printStackTrace();
+                close();
+            }
+        }
+
+        @SuppressWarnings("ResultOfMethodCallIgnored")
+        void rollIfNeeded() {
+            if (channel == null || !rotator.shouldRoll(size)) return;
+
+            write();
+            close();
+            if (binary) BinaryLogFormat.indexFor(file).delete();
+            lastMinute = -1;
+            rotator.roll(file);
+        }
+
+        void close() {
+            try {
+                if (channel != null) channel.close();
+                if (indexChannel != null) indexChannel.close();
+            } catch (IOException ex) {
+                if (Logging.DEBUG) ex.printStackTrace();
+            }
+
+            channel = null;
+            indexChannel = null;
+        }
+    }
+}
@@ -3,86 +3,148 @@ package com.gianlu.commonutils;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public final class Logging {
     public static boolean DEBUG = BuildConfig.DEBUG; // Overwritten by CommonUtils
+    private static final long FLUSH_TIMEOUT = 2000;
+    private static final int CRASH_RING_SIZE = 256;
+    private static final String CRASH_LOG_NAME = "crash.txt";
+    private static final CrashRing crashRing = new CrashRing(CRASH_RING_SIZE);
     private static File logFile;
     private static File secretLogFile;
+    private static LogWriter writer;
+    private static boolean binaryFormat = false;
+    private static volatile LogLine.Type level = LogLine.Type.INFO;
+    private static volatile LogLine.Type crashRingLevel = null;
+    private static File crashLogFile;
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void clearLogs(Context context) {
         Calendar cal = Calendar.getInstance();
         cal.add(Calendar.DATE, -7);
+        long threshold = cal.getTimeInMillis();
 
-        for (File file : context.getFilesDir().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File file, String s) {
-                return s.toLowerCase().endsWith(".log") || s.toLowerCase().endsWith(".secret");
-            }
-        })) {
-            try {
-                Date date = getFileDateFormatter().parse(file.getName().replace(".log", "").replace(".secret", ""));
-                if (date.before(cal.getTime())) file.delete();
-            } catch (ParseException ex) {
-                if (CommonUtils.isDebug()) ex.printStackTrace();
-            }
-        }
+        for (boolean secret : new boolean[]{false, true})
+            for (LogFile file : LogRotator.list(context.getFilesDir(), secret))
+                if (file.date < threshold) file.delete();
+    }
+
+    /**
+     * Sets the size after which the current log file is rolled into a compressed segment and the maximum size of all log files together
+     */
+    public static void setRotation(long maxFileSize, long maxTotalSize) {
+        LogRotator.setLimits(maxFileSize, maxTotalSize);
+    }
+
+    /**
+     * Writes compact binary records with a per-minute index instead of text lines, must be called before {@link #init(Context)}
+     */
+    public static void setBinaryFormat(boolean binary) {
+        binaryFormat = binary;
     }
 
-    @SuppressLint("SimpleDateFormat")
     private static SimpleDateFormat getFileDateFormatter() {
-        return new SimpleDateFormat("d-MM-yyyy");
+        return DateFormatters.get("d-MM-yyyy");
+    }
+
+    public static synchronized void init(Context context) {
+        crashLogFile = new File(context.getFilesDir(), CRASH_LOG_NAME);
+
+        String extension = binaryFormat ? BinaryLogFormat.EXTENSION : "";
+        logFile = new File(context.getFilesDir(), getFileDateFormatter().format(new Date()) + ".log" + extension);
+        secretLogFile = new File(context.getFilesDir(), getFileDateFormatter().format(new Date()) + ".secret" + extension);
+
+        LogRotator rotator = new LogRotator(logFile, secretLogFile);
+        rotator.maintain();
+
+        if (writer != null) writer.close();
+        writer = new LogWriter(logFile, secretLogFile, rotator, binaryFormat);
+        writer.start();
     }
 
-    public static void init(Context context) {
-        logFile = new File(context.getFilesDir(), getFileDateFormatter().format(new Date()) + ".log");
-        secretLogFile = new File(context.getFilesDir(), getFileDateFormatter().format(new Date()) + ".secret");
+    /**
+     * Waits for the pending log lines to be written to disk, should be called before the process dies
+     */
+    public static void flush() {
+        LogWriter current = writer;
+        if (current != null) current.flush(FLUSH_TIMEOUT);
     }
 
-    @SuppressWarnings({"ResultOfMethodCallIgnored", "BooleanMethodIsAlwaysInverted"})
-    private static boolean shouldLog() {
-        if (logFile != null && secretLogFile != null) {
-            try {
-                logFile.createNewFile();
-                secretLogFile.createNewFile();
-            } catch (IOException ex) {
-                if (CommonUtils.isDebug()) ex.printStackTrace();
+    /**
+     * Writes the records kept in memory and the given exception to the crash log, meant to be called from an uncaught exception handler
+     */
+    public static void dumpCrashLog(@Nullable Throwable ex) {
+        File file = crashLogFile;
+        if (file == null) return;
+
+        final StringBuilder builder = new StringBuilder(CRASH_RING_SIZE * 80);
+        final SimpleDateFormat formatter = DateFormatters.get("HH:mm:ss");
+        final Date date = new Date();
+        crashRing.forEach(new CrashRing.Visitor() {
+            @Override
+            public void visit(long time, @NonNull LogLine.Type type, @NonNull String message) {
+                date.setTime(time);
+                builder.append("--").append(type.name()).append("--").append(formatter.format(date))
+                        .append(" >> ").append(message.replace('\n', ' ')).append('\n');
             }
+        });
 
-            return logFile.canWrite() && secretLogFile.canWrite();
-        }
+        if (ex != null) builder.append('\n').append(getStackTrace(ex));
 
-        return false;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(builder.toString().getBytes("UTF-8"));
+        } catch (IOException ignored) {
+        }
     }
 
-    private static SimpleDateFormat getTimeFormatter() {
-        return new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    /**
+     * @return the content of the last crash log, if any
+     */
+    @Nullable
+    public static String getCrashLog(Context context) {
+        File file = new File(context.getFilesDir(), CRASH_LOG_NAME);
+        if (!file.exists()) return null;
+
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            CommonUtils.copy(in, out);
+            return out.toString("UTF-8");
+        } catch (IOException ex) {
+            return null;
+        }
     }
 
     @Nullable
@@ -92,59 +154,114 @@ public final class Logging {
     }
 
     public static LogFile moveLogFileToExternalStorage(Context context, LogFile log) throws ParseException, IOException {
-        LogFile dest = new LogFile(new File(context.getExternalCacheDir(), log.getName()));
-        CommonUtils.copyFile(log, dest);
-        return dest;
+        if (log.binary) {
+            LogFile dest = new LogFile(new File(context.getExternalCacheDir(), log.getTextName()));
+            exportAsText(log, dest);
+            return dest;
+        } else {
+            LogFile dest = new LogFile(new File(context.getExternalCacheDir(), log.getName()));
+            CommonUtils.copyFile(log, dest);
+            return dest;
+        }
     }
 
-    public static List<LogFile> listLogFiles(Context context, final boolean secret) {
-        final File files[] = context.getFilesDir().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File file, String s) {
-                return s.toLowerCase().endsWith(secret ? ".secret" : ".log");
-            }
-        });
-
-        List<LogFile> logFiles = new ArrayList<>();
-        for (File file : files) {
-            try {
-                logFiles.add(new LogFile(file));
-            } catch (ParseException ex) {
-                if (CommonUtils.isDebug()) ex.printStackTrace();
+    /**
+     * Converts a binary log file into the plain text format
+     */
+    public static void exportAsText(LogFile log, File dest) throws IOException {
+        boolean secret = LogRotator.isLogFileName(log.getName(), true);
+        SimpleDateFormat formatter = DateFormatters.get("HH:mm:ss");
+
+        try (LogReader reader = new LogReader(log);
+             Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dest), "UTF-8"))) {
+            LogReader.Record record;
+            while ((record = reader.nextRecord()) != null) {
+                String time = formatter.format(new Date(record.time));
+                if (secret) {
+                    if (record.trace == null) {
+                        out.write(time + " >> " + record.message + "\n\n");
+                    } else {
+                        int space = record.message.indexOf(' ');
+                        String id = record.message.startsWith("#") && space != -1 ? record.message.substring(0, space + 1) : "";
+                        out.write(time + " >> " + id + record.trace + "\n\n");
+                    }
+                } else if (record.type != null) {
+                    out.write("--" + record.type.name() + "--" + time + " >> " + record.message.replace("\n", " ") + "\n");
+                }
             }
         }
+    }
 
-        Collections.sort(logFiles, new LogFileComparator());
+    /**
+     * Deletes all the log files, the current one included, after writing the pending lines
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static void deleteLogs(Context context, boolean secret) {
+        flush();
+        for (File logFile : listLogFiles(context, secret)) logFile.delete();
+    }
 
-        return logFiles;
+    public static List<LogFile> listLogFiles(Context context, boolean secret) {
+        return LogRotator.list(context.getFilesDir(), secret);
     }
 
     public static List<LogLine> getLogLines(Context context, LogFile log) throws IOException {
-        List<LogLine> logLines = new ArrayList<>();
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(context.openFileInput(log.getName())));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("--ERROR--")) {
-                logLines.add(new LogLine(LogLine.Type.ERROR, line.replace("--ERROR--", "")));
-            } else if (line.startsWith("--INFO--")) {
-                logLines.add(new LogLine(LogLine.Type.INFO, line.replace("--INFO--", "")));
-            }
+        try (LogReader reader = new LogReader(log)) {
+            return reader.readPage(Integer.MAX_VALUE).lines;
+        }
+    }
+
+    @Nullable
+    static LogLine parseLine(@NonNull String line) {
+        if (!line.startsWith("--")) return null;
+        int end = line.indexOf("--", 2);
+        if (end == -1) return null;
+
+        for (LogLine.Type type : LogLine.Type.VALUES) {
+            String name = type.name();
+            if (name.length() == end - 2 && line.startsWith(name, 2))
+                return new LogLine(type, line.substring(end + 2));
         }
 
-        return logLines;
+        return null;
     }
 
-    public static void secret(Throwable exx) {
-        if (DEBUG) exx.printStackTrace();
-        if (!shouldLog()) return;
+    @NonNull
+    public static LogLine.Type getLevel() {
+        return level;
+    }
 
-        try (FileOutputStream out = new FileOutputStream(secretLogFile, true)) {
-            out.write((getTimeFormatter().format(new Date()) + " >> " + getStackTrace(exx) + "\n\n").getBytes());
-            out.flush();
-        } catch (IOException ex) {
-            if (DEBUG) ex.printStackTrace();
-        }
+    /**
+     * Messages below the given level are not written to disk, can be changed at any time
+     */
+    public static void setLevel(@NonNull LogLine.Type level) {
+        Logging.level = level;
+    }
+
+    /**
+     * Messages below the given level are not kept in the in-memory crash ring, see {@link #dumpCrashLog(Throwable)}.
+     * Until set, or when set to {@code null}, the crash ring follows {@link #setLevel(LogLine.Type)}.
+     * A level lower than that makes messages below the file level be built anyway, just to be kept in memory.
+     */
+    public static void setCrashRingLevel(@Nullable LogLine.Type level) {
+        crashRingLevel = level;
+    }
+
+    @NonNull
+    private static LogLine.Type crashRingLevel() {
+        LogLine.Type ringLevel = crashRingLevel;
+        return ringLevel == null ? level : ringLevel;
+    }
+
+    public static boolean isLoggable(@NonNull LogLine.Type type) {
+        return type.ordinal() >= Math.min(level.ordinal(), crashRingLevel().ordinal());
+    }
+
+    public static void secret(Throwable ex) {
+        if (DEBUG) ex.printStackTrace();
+
+        LogWriter current = writer;
+        if (current != null) current.secret(ex);
     }
 
     public static String getStackTrace(@NonNull Throwable ex) {
@@ -161,21 +278,47 @@ public final class Logging {
     }
 
     public static void log(String message, boolean isError) {
+        log(isError ? LogLine.Type.ERROR : LogLine.Type.INFO, message);
+    }
+
+    public static void log(@NonNull LogLine.Type type, String message) {
+        if (!isLoggable(type)) return;
+        write(type, message);
+    }
+
+    /**
+     * The supplier is only invoked if the level is enabled
+     */
+    public static void log(@NonNull LogLine.Type type, @NonNull MessageSupplier supplier) {
+        if (!isLoggable(type)) return;
+        write(type, supplier.get());
+    }
+
+    /**
+     * The message is only formatted if the level is enabled
+     */
+    public static void log(@NonNull LogLine.Type type, @NonNull String format, Object... args) {
+        if (!isLoggable(type)) return;
+        write(type, String.format(Locale.getDefault(), format, args));
+    }
+
+    private static void write(@NonNull LogLine.Type type, String message) {
         if (message == null) message = "No message given";
+        if (type.ordinal() >= crashRingLevel().ordinal())
+            crashRing.add(System.currentTimeMillis(), type, message);
+        if (type.ordinal() < level.ordinal()) return;
 
         if (DEBUG) {
-            if (isError) System.err.println(message);
+            if (type == LogLine.Type.ERROR) System.err.println(message);
             else System.out.println(message);
         }
 
-        if (!shouldLog()) return;
+        LogWriter current = writer;
+        if (current != null) current.log(type, message);
+    }
 
-        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
-            out.write(((isError ? "--ERROR--" : "--INFO--") + getTimeFormatter().format(new Date()) + " >> " + message.replace("\n", " ") + "\n").getBytes());
-            out.flush();
-        } catch (IOException ex) {
-            if (DEBUG) ex.printStackTrace();
-        }
+    public interface MessageSupplier {
+        String get();
     }
 
     public static class LogLine implements Serializable {
@@ -188,43 +331,162 @@ public final class Logging {
         }
 
         public enum Type {
+            DEBUG,
             INFO,
             WARNING,
-            ERROR
+            ERROR;
+
+            static final Type[] VALUES = values();
         }
     }
 
     public static class LogFileComparator implements Comparator<LogFile> {
         @Override
         public int compare(LogFile o1, LogFile o2) {
-            return Long.compare(o2.date, o1.date);
+            if (o1.date != o2.date) return Long.compare(o2.date, o1.date);
+            if (o1.segment == o2.segment) return 0;
+            if (o1.segment == 0) return -1;
+            if (o2.segment == 0) return 1;
+            return Integer.compare(o2.segment, o1.segment);
         }
     }
 
     public static class LogFile extends File {
         public final long date;
+        public final int segment;
+        public final boolean compressed;
+        public final boolean binary;
 
-        @SuppressLint("SimpleDateFormat")
         public LogFile(File file) throws ParseException {
             super(file.getAbsolutePath());
-            date = new SimpleDateFormat("d-LL-yyyy").parse(toString()).getTime();
+
+            String[] parts = getName().split("\\.");
+            date = DateFormatters.get("d-LL-yyyy").parse(parts[0]).getTime();
+            compressed = getName().endsWith(LogRotator.COMPRESSED_EXTENSION);
+            binary = BinaryLogFormat.isBinary(this);
+
+            if (parts.length >= 3 && TextUtils.isDigitsOnly(parts[1])) segment = Integer.parseInt(parts[1]);
+            else segment = 0;
+        }
+
+        @NonNull
+        String getTextName() {
+            String name = getName();
+            if (compressed) name = name.substring(0, name.length() - LogRotator.COMPRESSED_EXTENSION.length());
+            if (binary) name = name.substring(0, name.length() - BinaryLogFormat.EXTENSION.length());
+            return name;
         }
 
         @Override
-        public String toString() {
+        @SuppressWarnings("ResultOfMethodCallIgnored")
+        public boolean delete() {
+            if (binary) BinaryLogFormat.indexFor(this).delete();
+            return super.delete();
+        }
+
+        @NonNull
+        public String toDateString() {
             return getName().split("\\.")[0];
         }
+
+        @Override
+        public String toString() {
+            if (segment == 0) return toDateString();
+            else return toDateString() + " (" + segment + ")";
+        }
     }
 
     public static class LogLineAdapter extends RecyclerView.Adapter<LogLineAdapter.ViewHolder> {
+        private static final int PAGE_SIZE = 100;
         private final List<LogLine> objs;
         private final IAdapter listener;
         private final LayoutInflater inflater;
+        private final Handler handler;
+        private final LogPager reader;
+        private final ExecutorService executor;
+        private boolean loading = false;
 
         public LogLineAdapter(Context context, List<LogLine> objs, @Nullable IAdapter listener) {
             this.inflater = LayoutInflater.from(context);
             this.objs = objs;
             this.listener = listener;
+            this.handler = new Handler(Looper.getMainLooper());
+            this.reader = null;
+            this.executor = null;
+        }
+
+        public LogLineAdapter(Context context, LogFile log, @Nullable IAdapter listener) throws IOException {
+            this(context, log, null, listener);
+        }
+
+        public LogLineAdapter(Context context, LogFile log, @Nullable LogLine.Type minLevel, @Nullable IAdapter listener) throws IOException {
+            this(context, log, minLevel, null, listener);
+        }
+
+        /**
+         * Shows only the lines matching the level and the query, found by {@link LogSearch}
+         */
+        public LogLineAdapter(Context context, LogFile log, @Nullable LogLine.Type minLevel, @Nullable String query, @Nullable IAdapter listener) throws IOException {
+            this.inflater = LayoutInflater.from(context);
+            this.objs = new ArrayList<>();
+            this.listener = listener;
+            this.handler = new Handler(Looper.getMainLooper());
+            this.reader = LogSearch.open(log, minLevel, query);
+            this.executor = Executors.newSingleThreadExecutor();
+
+            loadMoreContent();
+        }
+
+        private void loadMoreContent() {
+            if (loading || reader == null || !reader.hasMore() || executor.isShutdown()) return;
+            loading = true;
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    LogReader.Page page;
+                    try {
+                        page = reader.readPage(PAGE_SIZE);
+                    } catch (IOException ex) {
+                        Logging.log(ex);
+                        page = null;
+                    }
+
+                    final LogReader.Page result = page;
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (result != null && !result.lines.isEmpty()) {
+                                int start = objs.size();
+                                objs.addAll(result.lines);
+                                notifyItemRangeInserted(start, result.lines.size());
+                            }
+
+                            loading = false;
+                            if (result == null || result.last) close();
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Stops paging and releases the underlying file
+         */
+        public void close() {
+            if (executor == null || executor.isShutdown()) return;
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reader.close();
+                    } catch (IOException ex) {
+                        Logging.log(ex);
+                    }
+                }
+            });
+            executor.shutdown();
         }
 
         public void clear() {
@@ -246,10 +508,16 @@ public final class Logging {
         @SuppressLint("SetTextI18n")
         @Override
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            if (position >= objs.size() - PAGE_SIZE / 2) loadMoreContent();
+
             final LogLine item = objs.get(position);
 
             holder.msg.setText(item.message);
             switch (item.type) {
+                case DEBUG:
+                    holder.level.setText("DEBUG: ");
+                    holder.level.setTextColor(Color.GRAY);
+                    break;
                 case INFO:
                     holder.level.setText("INFO: ");
                     holder.level.setTextColor(Color.BLACK);
@@ -12,15 +12,21 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.SearchView;
 import android.widget.Spinner;
 
-import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.List;
 
 public class LogsActivity extends AppCompatActivity implements Logging.LogLineAdapter.IAdapter {
     private static final int DELETE_LOGS_ID = 1;
+    private static final int ERRORS_ONLY_ID = 2;
+    private static final int SEARCH_ID = 3;
+    private Logging.LogLineAdapter adapter;
+    private RecyclerViewLayout layout;
+    private Logging.LogFile currentFile;
+    private boolean errorsOnly = false;
+    private String query = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,7 +35,7 @@ public class LogsActivity extends AppCompatActivity implements Logging.LogLineAd
         setTitle(R.string.log_activity_title);
 
         final Spinner spinner = findViewById(R.id.logs_spinner);
-        final RecyclerViewLayout layout = findViewById(R.id.logs_recyclerViewLayout);
+        layout = findViewById(R.id.logs_recyclerViewLayout);
         layout.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false));
         layout.getList().addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
         final List<Logging.LogFile> logFiles = Logging.listLogFiles(this, false);
@@ -44,12 +50,7 @@ public class LogsActivity extends AppCompatActivity implements Logging.LogLineAd
         spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> adapterView, View view, int i, long l) {
-                try {
-                    layout.loadListData(new Logging.LogLineAdapter(LogsActivity.this, Logging.getLogLines(LogsActivity.this, logFiles.get(i)), LogsActivity.this));
-                } catch (IOException ex) {
-                    Logging.log(ex);
-                    onBackPressed();
-                }
+                loadLogFile(logFiles.get(i));
             }
 
             @Override
@@ -61,25 +62,62 @@ public class LogsActivity extends AppCompatActivity implements Logging.LogLineAd
         spinner.setSelection(0);
     }
 
+    private void loadLogFile(Logging.LogFile file) {
+        if (adapter != null) adapter.close();
+        currentFile = file;
+
+        try {
+            adapter = new Logging.LogLineAdapter(this, file, errorsOnly ? Logging.LogLine.Type.ERROR : null, query, this);
+            layout.loadListData(adapter);
+        } catch (IOException ex) {
+            Logging.log(ex);
+            onBackPressed();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (adapter != null) adapter.close();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
+        SearchView searchView = new SearchView(this);
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String text) {
+                query = text;
+                if (currentFile != null) loadLogFile(currentFile);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String text) {
+                if (text.isEmpty() && query != null) onQueryTextSubmit(null);
+                return false;
+            }
+        });
+
+        menu.add(Menu.NONE, SEARCH_ID, Menu.NONE, R.string.search)
+                .setIcon(android.R.drawable.ic_menu_search)
+                .setActionView(searchView)
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM | MenuItem.SHOW_AS_ACTION_COLLAPSE_ACTION_VIEW);
+        menu.add(Menu.NONE, ERRORS_ONLY_ID, Menu.NONE, R.string.showErrorsOnly).setCheckable(true).setChecked(errorsOnly);
         menu.add(Menu.NONE, DELETE_LOGS_ID, Menu.NONE, R.string.deleteAllLogs);
         return true;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+            case ERRORS_ONLY_ID:
+                errorsOnly = !errorsOnly;
+                item.setChecked(errorsOnly);
+                if (currentFile != null) loadLogFile(currentFile);
+                return true;
             case DELETE_LOGS_ID:
-                File files[] = getFilesDir().listFiles(new FilenameFilter() {
-                    @Override
-                    public boolean accept(File file, String s) {
-                        return s.toLowerCase().endsWith(".log");
-                    }
-                });
-
-                for (File logFile : files) logFile.delete();
+                Logging.deleteLogs(this, false);
 
                 Toaster.show(this, Toaster.Message.LOGS_DELETED);
                 onBackPressed();
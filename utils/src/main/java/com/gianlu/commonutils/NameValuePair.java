@@ -49,7 +49,7 @@ public class NameValuePair {
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, value);
+        return 31 * key.hashCode() + (value == null ? 0 : value.hashCode());
     }
 
     @Override
@@ -0,0 +1,155 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Builds {@code application/x-www-form-urlencoded} query strings, can be reused after {@link #reset()}.
+ * Encoding and decoding follow {@link java.net.URLEncoder} and {@link java.net.URLDecoder} with UTF-8, without intermediate arrays.
+ */
+public final class QueryBuilder {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private final StringBuilder builder;
+
+    public QueryBuilder() {
+        this(64);
+    }
+
+    public QueryBuilder(int capacity) {
+        builder = new StringBuilder(capacity);
+    }
+
+    /**
+     * @param value {@code null} is encoded as an empty value
+     */
+    @NonNull
+    public QueryBuilder add(@NonNull CharSequence key, @Nullable CharSequence value) {
+        if (builder.length() > 0) builder.append('&');
+        encode(key, builder);
+        builder.append('=');
+        if (value != null) encode(value, builder);
+        return this;
+    }
+
+    @NonNull
+    public QueryBuilder reset() {
+        builder.setLength(0);
+        return this;
+    }
+
+    public int length() {
+        return builder.length();
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+
+    public static void encode(@NonNull CharSequence str, @NonNull StringBuilder out) {
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else {
+                int cp = c;
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1)))
+                    cp = Character.toCodePoint(c, str.charAt(++i));
+                else if (Character.isSurrogate(c))
+                    cp = '?';
+
+                appendUtf8(cp, out);
+            }
+        }
+    }
+
+    private static void appendUtf8(int cp, @NonNull StringBuilder out) {
+        if (cp < 0x80) {
+            appendByte(cp, out);
+        } else if (cp < 0x800) {
+            appendByte(0xC0 | (cp >> 6), out);
+            appendByte(0x80 | (cp & 0x3F), out);
+        } else if (cp < 0x10000) {
+            appendByte(0xE0 | (cp >> 12), out);
+            appendByte(0x80 | ((cp >> 6) & 0x3F), out);
+            appendByte(0x80 | (cp & 0x3F), out);
+        } else {
+            appendByte(0xF0 | (cp >> 18), out);
+            appendByte(0x80 | ((cp >> 12) & 0x3F), out);
+            appendByte(0x80 | ((cp >> 6) & 0x3F), out);
+            appendByte(0x80 | (cp & 0x3F), out);
+        }
+    }
+
+    private static void appendByte(int b, @NonNull StringBuilder out) {
+        out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    /**
+     * Decodes {@code str[start, end)} into the builder, invalid UTF-8 sequences become U+FFFD
+     *
+     * @throws IllegalArgumentException if a percent escape is incomplete or not hexadecimal
+     */
+    public static void decode(@NonNull CharSequence str, int start, int end, @NonNull StringBuilder out) {
+        int i = start;
+        while (i < end) {
+            char c = str.charAt(i);
+            if (c == '+') {
+                out.append(' ');
+                i++;
+            } else if (c != '%') {
+                out.append(c);
+                i++;
+            } else {
+                int b = hexByte(str, i, end);
+                i += 3;
+
+                int need;
+                int cp;
+                if (b < 0x80) {
+                    out.append((char) b);
+                    continue;
+                } else if ((b & 0xE0) == 0xC0) {
+                    need = 1;
+                    cp = b & 0x1F;
+                } else if ((b & 0xF0) == 0xE0) {
+                    need = 2;
+                    cp = b & 0x0F;
+                } else if ((b & 0xF8) == 0xF0) {
+                    need = 3;
+                    cp = b & 0x07;
+                } else {
+                    out.append('\uFFFD');
+                    continue;
+                }
+
+                while (need > 0 && i < end && str.charAt(i) == '%') {
+                    int next = hexByte(str, i, end);
+                    if ((next & 0xC0) != 0x80) break;
+                    cp = (cp << 6) | (next & 0x3F);
+                    i += 3;
+                    need--;
+                }
+
+                if (need > 0 || cp > Character.MAX_CODE_POINT || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+                    out.append('\uFFFD');
+                else
+                    out.appendCodePoint(cp);
+            }
+        }
+    }
+
+    private static int hexByte(@NonNull CharSequence str, int at, int end) {
+        if (at + 2 >= end)
+            throw new IllegalArgumentException("Incomplete escape at " + at);
+
+        int hi = Character.digit(str.charAt(at + 1), 16);
+        int lo = Character.digit(str.charAt(at + 2), 16);
+        if (hi == -1 || lo == -1) throw new IllegalArgumentException("Illegal hex characters in escape at " + at);
+        return (hi << 4) | lo;
+    }
+}
@@ -0,0 +1,229 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Ordered query parameters stored in parallel key/value arrays. Keys may repeat, lookups go through a hash index built on first use.
+ */
+public final class QueryParams implements Iterable<NameValuePair> {
+    private String[] keys;
+    private String[] values;
+    private int size = 0;
+    private Map<String, Integer> firstIndex;
+    private int[] nextIndex;
+
+    public QueryParams() {
+        this(8);
+    }
+
+    public QueryParams(int capacity) {
+        keys = new String[Math.max(1, capacity)];
+        values = new String[keys.length];
+    }
+
+    @NonNull
+    public static QueryParams parse(@NonNull CharSequence query) {
+        QueryParams params = new QueryParams();
+        StringBuilder builder = new StringBuilder();
+
+        int start = 0;
+        int len = query.length();
+        while (start < len) {
+            int end = start;
+            int idx = -1;
+            for (; end < len; end++) {
+                char c = query.charAt(end);
+                if (c == '&') break;
+                else if (c == '=' && idx == -1) idx = end;
+            }
+
+            if (idx > start) {
+                builder.setLength(0);
+                QueryBuilder.decode(query, start, idx, builder);
+                String key = builder.toString();
+
+                builder.setLength(0);
+                QueryBuilder.decode(query, idx + 1, end, builder);
+                params.add(key, builder.toString());
+            }
+
+            start = end + 1;
+        }
+
+        return params;
+    }
+
+    @NonNull
+    public static QueryParams of(@NonNull Collection<NameValuePair> pairs) {
+        QueryParams params = new QueryParams(pairs.size());
+        for (NameValuePair pair : pairs) params.add(pair.key(), pair.value());
+        return params;
+    }
+
+    @NonNull
+    public QueryParams add(@NonNull String key, @Nullable String value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        firstIndex = null;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @NonNull
+    public String key(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    @Nullable
+    public String value(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public boolean has(@NonNull String key) {
+        return index().containsKey(key);
+    }
+
+    /**
+     * @return the first value for the key
+     */
+    @Nullable
+    public String get(@NonNull String key) {
+        Integer first = index().get(key);
+        return first == null ? null : values[first];
+    }
+
+    @NonNull
+    public List<String> getAll(@NonNull String key) {
+        Integer first = index().get(key);
+        if (first == null) return Collections.emptyList();
+
+        List<String> list = new ArrayList<>(2);
+        for (int i = first; i != -1; i = nextIndex[i]) list.add(values[i]);
+        return list;
+    }
+
+    @NonNull
+    private Map<String, Integer> index() {
+        if (firstIndex == null) {
+            Map<String, Integer> first = new HashMap<>((int) (size / 0.75f) + 1);
+            int[] next = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                Integer previous = first.put(keys[i], i);
+                next[i] = previous == null ? -1 : previous;
+            }
+
+            nextIndex = next;
+            firstIndex = first;
+        }
+
+        return firstIndex;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+
+    /**
+     * Keys appearing once are mapped to their value, repeated keys to an array of all their values
+     */
+    @NonNull
+    public JSONObject toJson() throws JSONException {
+        Map<String, Integer> index = index();
+        JSONObject obj = new JSONObject();
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            int first = entry.getValue();
+            if (nextIndex[first] == -1) {
+                obj.put(entry.getKey(), values[first]);
+            } else {
+                JSONArray array = new JSONArray();
+                for (int i = first; i != -1; i = nextIndex[i]) array.put(values[i]);
+                obj.put(entry.getKey(), array);
+            }
+        }
+
+        return obj;
+    }
+
+    @NonNull
+    public String toQuery() {
+        QueryBuilder builder = new QueryBuilder(size * 16);
+        for (int i = 0; i < size; i++) builder.add(keys[i], values[i]);
+        return builder.toString();
+    }
+
+    /**
+     * @return a read-only view of the parameters as pairs
+     */
+    @NonNull
+    public List<NameValuePair> asList() {
+        return new AbstractList<NameValuePair>() {
+            @Override
+            public NameValuePair get(int index) {
+                return new NameValuePair(key(index), value(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public Iterator<NameValuePair> iterator() {
+        return new Iterator<NameValuePair>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public NameValuePair next() {
+                if (index >= size) throw new NoSuchElementException();
+                NameValuePair pair = new NameValuePair(keys[index], values[index]);
+                index++;
+                return pair;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return toQuery();
+    }
+}
@@ -30,7 +30,12 @@ public class Toaster {
             if (extra != null) handler.post(extra);
         }
 
-        Logging.log(message + (message_extra != null ? (" Details: " + message_extra) : ""), ex != null);
+        Logging.log(ex != null ? Logging.LogLine.Type.ERROR : Logging.LogLine.Type.INFO, new Logging.MessageSupplier() {
+            @Override
+            public String get() {
+                return message + (message_extra != null ? (" Details: " + message_extra) : "");
+            }
+        });
         if (ex != null) Logging.log(ex);
     }
 
@@ -0,0 +1,96 @@
+package com.gianlu.commonutils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collapses throwables with the same class and top frames logged within {@link #WINDOW} of the first one
+ */
+final class TraceDeduplicator {
+    static final long WINDOW = 60 * 1000;
+    private static final int FRAMES = 5;
+    private static final int MAX_TRACKED = 128;
+    private final Map<Long, Trace> traces = new LinkedHashMap<>();
+    private int nextId = 1;
+
+    static long fingerprint(@NonNull Throwable ex) {
+        long hash = ex.getClass().getName().hashCode();
+        StackTraceElement[] frames = ex.getStackTrace();
+        for (int i = 0; i < Math.min(FRAMES, frames.length); i++)
+            hash = hash * 1000003 + frames[i].hashCode();
+
+        return hash;
+    }
+
+    /**
+     * @return the tracked trace, if {@link Trace#repeats} is zero this is the first occurrence and must be written in full
+     */
+    @NonNull
+    Trace register(@NonNull Throwable ex, long time, @NonNull Listener listener) {
+        expire(time, listener);
+
+        Long key = fingerprint(ex);
+        Trace trace = traces.get(key);
+        if (trace != null) {
+            trace.repeats++;
+            return trace;
+        }
+
+        if (traces.size() >= MAX_TRACKED) {
+            Iterator<Trace> iterator = traces.values().iterator();
+            Trace eldest = iterator.next();
+            iterator.remove();
+            if (eldest.repeats > 0) listener.onCollapsed(eldest);
+        }
+
+        trace = new Trace(nextId++, time);
+        traces.put(key, trace);
+        return trace;
+    }
+
+    /**
+     * Reports the repeats of every trace whose window has closed
+     */
+    void expire(long now, @NonNull Listener listener) {
+        Iterator<Trace> iterator = traces.values().iterator();
+        while (iterator.hasNext()) {
+            Trace trace = iterator.next();
+            if (now - trace.first < WINDOW) break;
+
+            iterator.remove();
+            if (trace.repeats > 0) listener.onCollapsed(trace);
+        }
+    }
+
+    void expireAll(@NonNull Listener listener) {
+        expire(Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * @return when the oldest window closes, or -1 if no repeats are waiting to be reported
+     */
+    long nextExpiry() {
+        for (Trace trace : traces.values())
+            if (trace.repeats > 0) return trace.first + WINDOW;
+
+        return -1;
+    }
+
+    interface Listener {
+        void onCollapsed(@NonNull Trace trace);
+    }
+
+    static class Trace {
+        final int id;
+        final long first;
+        int repeats = 0;
+
+        Trace(int id, long first) {
+            this.id = id;
+            this.first = first;
+        }
+    }
+}